@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "persistence.batch")
+public class BatchWriterSettings {
+
+    private int flushSize = 5000;
+    private long flushIntervalMs = 2000;
+    private int maxAttempts = 3;
+    private int maxBufferedRows = 50_000;
+}
@@ -0,0 +1,22 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "persistence.content")
+public class ContentStorageSettings {
+
+    private String mode = "deflate";
+    private int level = 6;
+    private boolean compressExisting = false;
+    private int migrationBatchSize = 500;
+
+    public boolean isCompressed() {
+        return "deflate".equalsIgnoreCase(mode);
+    }
+}
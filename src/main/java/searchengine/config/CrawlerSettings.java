@@ -0,0 +1,35 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler")
+public class CrawlerSettings {
+
+    /**
+     * Движок обхода сайтов: fork-join (рекурсивные задачи в ForkJoinPool),
+     * executor (очередь адресов и пул потоков с ограничением числа одновременных загрузок)
+     * или pipeline (стадии загрузки, лемматизации и записи со своими пулами и ограниченными очередями).
+     */
+    private String engine = "fork-join";
+
+    private int maxInFlight = 64;
+
+    private int siteJobSlots = 2;
+
+    private Pipeline pipeline = new Pipeline();
+
+    @Getter
+    @Setter
+    public static class Pipeline {
+        private int fetchWorkers = 32;
+        private int lemmatizeWorkers = Runtime.getRuntime().availableProcessors();
+        private int persistWorkers = 4;
+        private int queueCapacity = 256;
+    }
+}
@@ -0,0 +1,21 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "persistence.index-store")
+public class IndexStoreSettings {
+
+    private String type = "postgres";
+    private String directory = "data/index-segments";
+    private int mergeFactor = 8;
+    private long mergeCheckSeconds = 30;
+    private int maxSegmentMegabytes = 1024;
+    private int purgeDeletedPercent = 20;
+    private boolean rebuildOnStart = false;
+}
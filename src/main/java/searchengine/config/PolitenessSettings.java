@@ -0,0 +1,21 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler.politeness")
+public class PolitenessSettings {
+
+    private double requestsPerSecond = 2.0;
+    private int burst = 4;
+    private int maxConnectionsPerHost = 4;
+    private long minDelayMs = 100;
+    private long maxDelayMs = 60000;
+    private double latencyFactor = 0.25;
+    private int maxRetries = 3;
+}
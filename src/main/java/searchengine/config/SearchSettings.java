@@ -0,0 +1,89 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search")
+public class SearchSettings {
+
+    private String engine = "memory";
+    private String scorer = "bm25";
+    private double bm25K1 = 1.2;
+    private double bm25B = 0.75;
+
+    private Cache cache = new Cache();
+    private Positions positions = new Positions();
+    private Suggest suggest = new Suggest();
+    private Fuzzy fuzzy = new Fuzzy();
+    private Shards shards = new Shards();
+    private Async async = new Async();
+    private FrequentLemmas frequentLemmas = new FrequentLemmas();
+
+    public boolean isMemoryEngine() {
+        return "memory".equalsIgnoreCase(engine);
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+        private boolean enabled = true;
+        private int maxEntries = 10_000;
+        private long ttlSeconds = 300;
+    }
+
+    @Getter
+    @Setter
+    public static class Positions {
+        private boolean enabled = true;
+        private int rerankDepth = 200;
+        private int maxPhraseCandidates = 10_000;
+        private double proximityWeight = 0.5;
+        private int cacheEntries = 200_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Suggest {
+        private boolean enabled = true;
+        private int maxLimit = 50;
+        private long rebuildCheckSeconds = 30;
+    }
+
+    @Getter
+    @Setter
+    public static class Fuzzy {
+        private boolean enabled = true;
+        private int maxExpansions = 3;
+        private int minWordLength = 3;
+        private int maxDistance = 2;
+        private int shortWordLength = 5;
+    }
+
+    @Getter
+    @Setter
+    public static class Shards {
+        private boolean enabled = true;
+        private int threads = 0;
+    }
+
+    @Getter
+    @Setter
+    public static class Async {
+        private boolean enabled = true;
+        private int threads = 16;
+        private long deadlineMillis = 2000;
+    }
+
+    @Getter
+    @Setter
+    public static class FrequentLemmas {
+        private boolean enabled = true;
+        private int maxPagePercent = 10;
+        private int minPages = 100;
+    }
+}
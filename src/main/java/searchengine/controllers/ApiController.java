@@ -6,15 +6,25 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import searchengine.dto.indexing.PipelineStageStatistics;
+import searchengine.dto.indexing.SiteJobStatus;
 import searchengine.dto.response.ApiResponse;
 import searchengine.dto.search.ApiSearchResponse;
+import searchengine.dto.search.ApiSuggestResponse;
+import searchengine.dto.statistics.CacheStatistics;
 import searchengine.dto.statistics.StatisticsResponse;
+import searchengine.dto.statistics.StorageStatistics;
 import searchengine.services.indexing.interfaces.IndexingSitesService;
 import searchengine.services.search.SearchService;
 import searchengine.services.statisitc.StatisticsService;
+import searchengine.services.suggest.SuggestService;
 
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @RestController
@@ -26,16 +36,28 @@ public class ApiController {
     private final StatisticsService statisticsService;
     private final IndexingSitesService indexingSitesService;
     private final SearchService searchService;
+    private final SuggestService suggestService;
 
     @GetMapping("/statistics")
     public ResponseEntity<StatisticsResponse> statistics() {
         return ResponseEntity.ok(statisticsService.getStatistics());
     }
 
+    @GetMapping("/cacheStatistics")
+    public ResponseEntity<List<CacheStatistics>> cacheStatistics() {
+        return ResponseEntity.ok(statisticsService.getCacheStatistics());
+    }
+
+    @GetMapping("/storageStatistics")
+    public ResponseEntity<StorageStatistics> storageStatistics() {
+        return ResponseEntity.ok(statisticsService.getStorageStatistics());
+    }
+
     @GetMapping("/startIndexing")
-    public ResponseEntity<ApiResponse> startIndexing() {
+    public ResponseEntity<ApiResponse> startIndexing(
+            @RequestParam(value = "incremental", defaultValue = "false") boolean incremental) {
         log.info("Запрос на старт индексации получен");
-        ApiResponse response = indexingSitesService.startIndexing().getBody();
+        ApiResponse response = indexingSitesService.startIndexing(incremental).getBody();
         return ResponseEntity.ok(response);
     }
 
@@ -45,21 +67,67 @@ public class ApiController {
         return indexingSitesService.stopIndexing();
     }
 
+    @GetMapping("/startIndexingSite")
+    public ResponseEntity<ApiResponse> startIndexingSite(
+            @RequestParam(value = "url") String url,
+            @RequestParam(value = "incremental", defaultValue = "false") boolean incremental) {
+        log.info("Запрос на старт индексации сайта {} получен", url);
+        return indexingSitesService.startIndexingSite(url, incremental);
+    }
+
+    @GetMapping("/stopIndexingSite")
+    public ResponseEntity<ApiResponse> stopIndexingSite(@RequestParam(value = "url") String url) {
+        log.info("Запрос на остановку индексации сайта {} получен", url);
+        return indexingSitesService.stopIndexingSite(url);
+    }
+
+    @GetMapping("/siteJobs")
+    public ResponseEntity<List<SiteJobStatus>> siteJobs() {
+        return ResponseEntity.ok(indexingSitesService.getSiteJobs());
+    }
+
+    @GetMapping("/pipelineStatistics")
+    public ResponseEntity<List<PipelineStageStatistics>> pipelineStatistics() {
+        return ResponseEntity.ok(indexingSitesService.getPipelineStatistics());
+    }
+
     @PostMapping(value = "/indexPage", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
     public ResponseEntity<ApiResponse> indexPage(@RequestParam(value = "url") String url) {
         return indexingSitesService.indexPage(URLDecoder.decode(url, StandardCharsets.UTF_8));
     }
 
+    /**
+     * Поиск выполняется вне потока веб-сервера; отключение клиента или таймаут запроса отменяют поиск.
+     */
     @GetMapping("/search")
-    public ResponseEntity<ApiSearchResponse> search(
+    public DeferredResult<ResponseEntity<ApiSearchResponse>> search(
             @RequestParam(value = "query", required = false) String query,
             @RequestParam(value = "site", required = false) String url,
-            @RequestParam(value = "offset", required = false) Integer offset,
-            @RequestParam(value = "limit", required = false) Integer limit) {
+            @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
 
         log.info("query: {}, url: {}, offset: {}, limit: {}", query, url, offset, limit);
         
         String decodedUrl = (url == null || url.isEmpty()) ? "" : URLDecoder.decode(url, StandardCharsets.UTF_8);
-        return ResponseEntity.ok(searchService.search(query, decodedUrl, offset, limit).getBody());
+        CompletableFuture<ResponseEntity<ApiSearchResponse>> future =
+                searchService.searchAsync(query, decodedUrl, offset, limit);
+        DeferredResult<ResponseEntity<ApiSearchResponse>> result = new DeferredResult<>();
+        result.onTimeout(() -> future.cancel(true));
+        result.onError(error -> future.cancel(true));
+        future.whenComplete((response, error) -> {
+            if (error == null) {
+                result.setResult(response);
+            } else if (!future.isCancelled()) {
+                result.setErrorResult(error instanceof CompletionException ? error.getCause() : error);
+            }
+        });
+        return result;
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<ApiSuggestResponse> suggest(
+            @RequestParam(value = "query", required = false) String query,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return suggestService.suggest(query, limit);
     }
 }
@@ -0,0 +1,19 @@
+package searchengine.dto.indexing;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jsoup.nodes.Document;
+
+@Getter
+@RequiredArgsConstructor
+public class PageFetchResult {
+    private final Document document;
+    private final int statusCode;
+    private final String etag;
+    private final String lastModified;
+    private final String contentHash;
+
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+}
@@ -0,0 +1,19 @@
+package searchengine.dto.indexing;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Результат разбора страницы при индексации: заголовок, видимый текст, леммы с числом вхождений
+ * и карта позиций слов ({@link searchengine.utility.TokenMap}) для сниппетов и фразового поиска.
+ */
+@Getter
+@RequiredArgsConstructor
+public class PageText {
+    private final String title;
+    private final String text;
+    private final Map<String, Integer> lemmaMap;
+    private final byte[] tokenMap;
+}
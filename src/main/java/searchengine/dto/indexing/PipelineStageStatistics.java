@@ -0,0 +1,13 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+@Data
+public class PipelineStageStatistics {
+    private String stage;
+    private int workers;
+    private int queueDepth;
+    private int queueCapacity;
+    private long processed;
+    private double throughputPerSecond;
+}
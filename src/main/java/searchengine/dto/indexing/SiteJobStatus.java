@@ -0,0 +1,13 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+@Data
+public class SiteJobStatus {
+    private String url;
+    private boolean running;
+    private boolean stopRequested;
+    private int pagesIndexed;
+    private long startTime;
+    private long finishTime;
+}
@@ -10,4 +10,5 @@ public class ApiSearchResponse {
     private int count;
     private List<ApiSearchResult> data;
     private String messageError;
+    private boolean partial;
 }
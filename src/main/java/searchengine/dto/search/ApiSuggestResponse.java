@@ -0,0 +1,11 @@
+package searchengine.dto.search;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ApiSuggestResponse {
+    private boolean result;
+    private List<ApiSuggestion> data;
+}
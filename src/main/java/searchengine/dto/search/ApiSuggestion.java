@@ -0,0 +1,9 @@
+package searchengine.dto.search;
+
+import lombok.Data;
+
+@Data
+public class ApiSuggestion {
+    private String text;
+    private int frequency;
+}
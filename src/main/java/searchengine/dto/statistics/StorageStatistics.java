@@ -0,0 +1,16 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class StorageStatistics {
+    private String contentMode;
+    private long htmlPages;
+    private long htmlBytes;
+    private long compressedPages;
+    private long compressedBytes;
+    private long plainTextBytes;
+    private List<TableStorage> tables;
+}
@@ -0,0 +1,13 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class TableStorage {
+    private String name;
+    private long rows;
+    private long totalBytes;
+    private long tableBytes;
+    private long toastBytes;
+    private long indexBytes;
+}
@@ -10,4 +10,5 @@ public class TotalStatistics {
     private int pages;
     private int lemmas;
     private boolean indexing;
+    private long visitedUrlsBytes;
 }
@@ -25,6 +25,33 @@ public class PageEntity {
     @Column(nullable = false)
     private int code;
 
+    @ToString.Exclude
     @Column(columnDefinition = "TEXT")
     private String content;
+
+    @ToString.Exclude
+    @Column(name = "content_compressed", columnDefinition = "bytea")
+    private byte[] contentCompressed;
+
+    @Column(length = 255)
+    private String etag;
+
+    @Column(name = "last_modified", length = 64)
+    private String lastModified;
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(name = "length")
+    private Integer length;
+
+    @Column(columnDefinition = "TEXT")
+    private String title;
+
+    @Column(name = "plain_text", columnDefinition = "TEXT")
+    private String plainText;
+
+    @ToString.Exclude
+    @Column(name = "token_map", columnDefinition = "bytea")
+    private byte[] tokenMap;
 }
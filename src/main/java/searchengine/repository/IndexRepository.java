@@ -23,9 +23,30 @@ public interface IndexRepository extends JpaRepository<IndexEntity, Integer> {
     @Query(value = "DELETE FROM sites_parsing.indexes_table WHERE page_id = :pageId", nativeQuery = true)
     void deleteAllByPage(@Param("pageId") int pageId);
 
+    @Modifying
+    @Query(value = "DELETE FROM sites_parsing.indexes_table WHERE page_id IN (:pageIds)", nativeQuery = true)
+    void deleteAllByPages(@Param("pageIds") List<Integer> pageIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM sites_parsing.indexes_table i USING sites_parsing.page p " +
+            "WHERE i.page_id = p.id AND p.site_id = :siteId", nativeQuery = true)
+    void deleteAllBySiteId(@Param("siteId") int siteId);
+
+    @Query(value = "SELECT i.lemma_id AS lemmaId, i.page_id AS pageId, l.site_id AS siteId, l.lemma AS lemma " +
+            "FROM sites_parsing.indexes_table i JOIN sites_parsing.lemmas l ON l.id = i.lemma_id " +
+            "WHERE i.page_id IN (:pageIds)", nativeQuery = true)
+    List<IndexKey> findKeysByPages(@Param("pageIds") List<Integer> pageIds);
+
     @Query("SELECT p FROM IndexEntity i JOIN i.page p WHERE i.lemma.lemma = :lemma AND i.page.site = :site")
     List<PageEntity> findPagesByLemma(@Param("lemma") String lemma, @Param("site") SiteEntity site);
 
-    @Query("SELECT SUM(i.rank) FROM IndexEntity i WHERE i.page = :page AND i.lemma.lemma IN :lemmas")
-    Float calculatePageRelevance(@Param("page") PageEntity page, @Param("lemmas") List<String> lemmas);
+    interface IndexKey {
+        int getLemmaId();
+
+        int getPageId();
+
+        int getSiteId();
+
+        String getLemma();
+    }
 }
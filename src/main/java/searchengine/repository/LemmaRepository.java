@@ -8,6 +8,7 @@ import org.springframework.stereotype.Repository;
 import searchengine.entity.LemmaEntity;
 import searchengine.entity.SiteEntity;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,8 +28,34 @@ public interface LemmaRepository extends JpaRepository<LemmaEntity, Integer> {
     @Query("SELECT l FROM LemmaEntity l JOIN IndexEntity it ON l.id = it.lemma.id WHERE it.page.id = :pageId")
     List<LemmaEntity> findUnusedLemmasBySite(@Param("pageId") int pageId);
 
+    @Modifying
+    @Query(value = "UPDATE sites_parsing.lemmas l SET frequency = l.frequency - 1 " +
+            "FROM sites_parsing.indexes_table i WHERE i.lemma_id = l.id AND i.page_id = :pageId", nativeQuery = true)
+    void decrementFrequencyByPage(@Param("pageId") int pageId);
+
+    @Modifying
+    @Query(value = "UPDATE sites_parsing.lemmas l SET frequency = l.frequency - d.pages " +
+            "FROM (SELECT lemma_id, COUNT(*) AS pages FROM sites_parsing.indexes_table " +
+            "WHERE page_id IN (:pageIds) GROUP BY lemma_id) d WHERE l.id = d.lemma_id", nativeQuery = true)
+    void decrementFrequencyByPages(@Param("pageIds") List<Integer> pageIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM sites_parsing.lemmas WHERE site_id = :siteId", nativeQuery = true)
+    void deleteAllBySiteId(@Param("siteId") int siteId);
+
     int countLemmasEntitiesBySite(SiteEntity siteEntity);
 
-    @Query("SELECT COUNT(l) FROM LemmaEntity l WHERE l.lemma = :lemma")
-    int countLemmaFrequency(@Param("lemma") String lemma);
+    @Query(value = "SELECT lemma AS lemma, SUM(frequency) AS frequency FROM sites_parsing.lemmas " +
+            "WHERE lemma IN (:lemmas) GROUP BY lemma", nativeQuery = true)
+    List<LemmaFrequency> sumFrequencies(@Param("lemmas") Collection<String> lemmas);
+
+    @Query(value = "SELECT lemma AS lemma, frequency AS frequency FROM sites_parsing.lemmas " +
+            "WHERE site_id = :siteId AND lemma IN (:lemmas)", nativeQuery = true)
+    List<LemmaFrequency> findFrequencies(@Param("siteId") int siteId, @Param("lemmas") Collection<String> lemmas);
+
+    interface LemmaFrequency {
+        String getLemma();
+
+        int getFrequency();
+    }
 }
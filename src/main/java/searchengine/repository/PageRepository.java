@@ -8,6 +8,7 @@ import org.springframework.stereotype.Repository;
 import searchengine.entity.PageEntity;
 import searchengine.entity.SiteEntity;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,18 +30,78 @@ public interface PageRepository extends JpaRepository<PageEntity, Integer> {
 
     int countPageEntitiesBySite(SiteEntity siteEntity);
 
-    @Query("SELECT p FROM PageEntity p " +
-            "JOIN IndexEntity i ON p.id = i.page.id " +
-            "JOIN LemmaEntity l ON i.lemma.id = l.id " +
-            "WHERE l.lemma IN :lemmas " +
-            "GROUP BY p.id " +
-            "HAVING COUNT(DISTINCT l.lemma) = :lemmaCount " +
-            "ORDER BY SUM(i.rank) DESC " +
-            "LIMIT :maxResults")
-    List<PageEntity> findPagesMatchingLemmas(@Param("lemmas") List<String> lemmas,
-                                             @Param("lemmaCount") int lemmaCount,
-                                             @Param("maxResults") int maxResults);
+    @Query(value = "SELECT id FROM sites_parsing.page WHERE site_id = :siteId", nativeQuery = true)
+    List<Integer> findIdsBySiteId(@Param("siteId") int siteId);
+
+    @Modifying
+    @Query(value = "DELETE FROM sites_parsing.page WHERE site_id = :siteId", nativeQuery = true)
+    void deleteAllBySiteId(@Param("siteId") int siteId);
+
+    @Modifying
+    @Query(value = "DELETE FROM sites_parsing.page WHERE id IN (:pageIds)", nativeQuery = true)
+    void deletePagesByIds(@Param("pageIds") List<Integer> pageIds);
+
+    @Modifying
+    @Query("UPDATE PageEntity p SET p.code = :code, p.content = :content, " +
+            "p.contentCompressed = :contentCompressed, p.etag = :etag, " +
+            "p.lastModified = :lastModified, p.contentHash = :contentHash, " +
+            "p.title = :title, p.plainText = :plainText, p.tokenMap = :tokenMap WHERE p.id = :pageId")
+    void updateContent(@Param("pageId") int pageId,
+                       @Param("code") int code,
+                       @Param("content") String content,
+                       @Param("contentCompressed") byte[] contentCompressed,
+                       @Param("etag") String etag,
+                       @Param("lastModified") String lastModified,
+                       @Param("contentHash") String contentHash,
+                       @Param("title") String title,
+                       @Param("plainText") String plainText,
+                       @Param("tokenMap") byte[] tokenMap);
+
+    @Modifying
+    @Query("UPDATE PageEntity p SET p.etag = :etag, p.lastModified = :lastModified WHERE p.id = :pageId")
+    void updateValidators(@Param("pageId") int pageId,
+                          @Param("etag") String etag,
+                          @Param("lastModified") String lastModified);
+
+    @Query("SELECT p.id AS id, p.path AS path, p.title AS title, p.plainText AS plainText, p.tokenMap AS tokenMap, " +
+            "s.url AS siteUrl, s.name AS siteName FROM PageEntity p JOIN p.site s WHERE p.id IN :pageIds")
+    List<PageView> findPageViews(@Param("pageIds") Collection<Integer> pageIds);
+
+    @Query("SELECT p.id AS id, p.tokenMap AS tokenMap FROM PageEntity p WHERE p.id IN :pageIds")
+    List<PageTokenMap> findTokenMaps(@Param("pageIds") Collection<Integer> pageIds);
+
+    @Query("SELECT p.content AS content, p.contentCompressed AS contentCompressed FROM PageEntity p " +
+            "WHERE p.id = :pageId")
+    Optional<PageContent> findContentById(@Param("pageId") int pageId);
 
     @Query("SELECT COUNT(p) FROM PageEntity p")
     int countTotalPages();
+
+    interface PageContent {
+        String getContent();
+
+        byte[] getContentCompressed();
+    }
+
+    interface PageTokenMap {
+        int getId();
+
+        byte[] getTokenMap();
+    }
+
+    interface PageView {
+        int getId();
+
+        String getPath();
+
+        String getTitle();
+
+        String getPlainText();
+
+        byte[] getTokenMap();
+
+        String getSiteUrl();
+
+        String getSiteName();
+    }
 }
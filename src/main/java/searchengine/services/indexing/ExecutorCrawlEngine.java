@@ -0,0 +1,156 @@
+package searchengine.services.indexing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.nodes.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.entity.SiteEntity;
+import searchengine.entity.Status;
+import searchengine.services.indexing.interfaces.CrawlEngine;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "crawler.engine", havingValue = "executor")
+public class ExecutorCrawlEngine implements CrawlEngine {
+
+    private final CrawlerSettings crawlerSettings;
+    private final SiteTaskService siteTaskService;
+
+    private final Set<SiteCrawl> activeCrawls = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private volatile ExecutorService executor;
+    private volatile boolean isStopIndexing = false;
+
+    @Override
+    public void crawl(List<SiteEntity> sites) {
+        restartIfNeeded();
+        List<SiteCrawl> crawls = sites.stream().map(SiteCrawl::new).toList();
+        activeCrawls.addAll(crawls);
+        log.info("Запускаем обход {} сайтов, одновременных загрузок не больше {}", crawls.size(), crawlerSettings.getMaxInFlight());
+        try {
+            crawls.forEach(crawl -> crawl.submit(crawl.siteEntity.getUrl()));
+            for (SiteCrawl crawl : crawls) {
+                crawl.await();
+            }
+        } finally {
+            activeCrawls.removeAll(crawls);
+        }
+    }
+
+    @Override
+    public synchronized void restartIfNeeded() {
+        if (executor == null || executor.isShutdown()) {
+            log.info("Создаем пул загрузчиков на {} потоков", crawlerSettings.getMaxInFlight());
+            executor = Executors.newFixedThreadPool(crawlerSettings.getMaxInFlight(),
+                    task -> new Thread(task, "crawler-" + threadCounter.incrementAndGet()));
+            isStopIndexing = false;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        ExecutorService current = executor;
+        if (current == null) {
+            return;
+        }
+        log.info("Плавная остановка пула загрузчиков...");
+        current.shutdown();
+        try {
+            if (!current.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Принудительное завершение пула загрузчиков...");
+                current.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            log.error("Ошибка при остановке пула загрузчиков", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void shutdownNow() {
+        log.warn("Принудительная остановка пула загрузчиков!");
+        isStopIndexing = true;
+        ExecutorService current = executor;
+        if (current != null) {
+            current.shutdownNow();
+        }
+        activeCrawls.forEach(SiteCrawl::release);
+    }
+
+    @Override
+    public boolean isIndexingStopped() {
+        return isStopIndexing;
+    }
+
+    private class SiteCrawl {
+
+        private final SiteEntity siteEntity;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private SiteCrawl(SiteEntity siteEntity) {
+            this.siteEntity = siteEntity;
+        }
+
+        private void submit(String url) {
+            pending.incrementAndGet();
+            try {
+                executor.execute(() -> process(url));
+            } catch (RejectedExecutionException e) {
+                log.debug("Пул загрузчиков остановлен, пропускаем {}", url);
+                complete();
+            }
+        }
+
+        private void process(String url) {
+            try {
+                if (isStopIndexing || siteEntity.getStatus() == Status.FAILED || siteTaskService.isStopRequested(siteEntity)) {
+                    return;
+                }
+                if (!siteTaskService.isValidUrl(url, siteEntity)) {
+                    log.debug("URL {} не соответствует корню сайта, пропускаем", url);
+                    return;
+                }
+                Document doc = siteTaskService.indexPage(url, siteEntity);
+                siteTaskService.collectNewLinks(doc, siteEntity).forEach(this::submit);
+            } catch (Exception e) {
+                log.error("Ошибка при обработке страницы: {}", url, e);
+                siteTaskService.handlePageError(url, e, siteEntity);
+            } finally {
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        private void release() {
+            done.countDown();
+        }
+
+        private void await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                log.warn("Ожидание обхода сайта {} прервано", siteEntity.getUrl());
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
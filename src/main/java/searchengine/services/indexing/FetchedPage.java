@@ -0,0 +1,17 @@
+package searchengine.services.indexing;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jsoup.nodes.Document;
+import searchengine.dto.indexing.PageFetchResult;
+import searchengine.entity.PageEntity;
+
+@Getter
+@RequiredArgsConstructor
+public class FetchedPage {
+    private final String uri;
+    private final PageFetchResult fetch;
+    private final PageEntity existing;
+    private final Document document;
+    private final boolean changed;
+}
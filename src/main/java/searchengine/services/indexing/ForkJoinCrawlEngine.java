@@ -0,0 +1,52 @@
+package searchengine.services.indexing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import searchengine.entity.SiteEntity;
+import searchengine.services.indexing.interfaces.CrawlEngine;
+import searchengine.services.managers.ForkJoinPoolManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "crawler.engine", havingValue = "fork-join", matchIfMissing = true)
+public class ForkJoinCrawlEngine implements CrawlEngine {
+
+    private final ForkJoinPoolManager forkJoinPoolManager;
+    private final SiteTaskService siteTaskService;
+
+    @Override
+    public void crawl(List<SiteEntity> sites) {
+        List<SiteTaskRecursive> siteTasks = new ArrayList<>();
+        for (SiteEntity siteEntity : sites) {
+            siteTasks.add(new SiteTaskRecursive(siteEntity.getUrl(), siteEntity, siteTaskService, forkJoinPoolManager));
+        }
+        log.info("Запускаем задачи ForkJoinPool. Количество задач: {}", siteTasks.size());
+        forkJoinPoolManager.executeTasks(siteTasks);
+    }
+
+    @Override
+    public void restartIfNeeded() {
+        forkJoinPoolManager.restartIfNeeded();
+    }
+
+    @Override
+    public void shutdown() {
+        forkJoinPoolManager.shutdown();
+    }
+
+    @Override
+    public void shutdownNow() {
+        forkJoinPoolManager.shutdownNow();
+    }
+
+    @Override
+    public boolean isIndexingStopped() {
+        return forkJoinPoolManager.isIndexingStopped();
+    }
+}
@@ -1,13 +1,28 @@
 package searchengine.services.indexing;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.Site;
+import searchengine.dto.indexing.PipelineStageStatistics;
+import searchengine.dto.indexing.SiteJobStatus;
 import searchengine.dto.response.ApiResponse;
+import searchengine.services.indexing.interfaces.CrawlEngine;
 import searchengine.services.indexing.interfaces.IndexingSitesService;
 import searchengine.services.indexing.interfaces.PageProcessService;
 import searchengine.services.managers.IndexingStateManager;
+import searchengine.services.managers.RepositoryManager;
+import searchengine.services.managers.StatusManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
@@ -16,10 +31,28 @@ public class IndexingSitesImpl implements IndexingSitesService {
 
     private final PageProcessService pageProcessService;
     private final IndexingStateManager indexingStateManager;
+    private final StatusManager statusManager;
+    private final CrawlerSettings crawlerSettings;
+    private final RepositoryManager repositoryManager;
+    private final CrawlEngine crawlEngine;
+
+    private final AtomicInteger siteJobCounter = new AtomicInteger();
+    private ExecutorService siteJobExecutor;
+
+    @PostConstruct
+    public void startSiteJobExecutor() {
+        siteJobExecutor = Executors.newFixedThreadPool(crawlerSettings.getSiteJobSlots(),
+                task -> new Thread(task, "site-job-" + siteJobCounter.incrementAndGet()));
+    }
+
+    @PreDestroy
+    public void stopSiteJobExecutor() {
+        siteJobExecutor.shutdownNow();
+    }
 
     @Override
-    public ResponseEntity<ApiResponse> startIndexing() {
-        log.info("Запрос на старт индексации получен");
+    public ResponseEntity<ApiResponse> startIndexing(boolean incremental) {
+        log.info("Запрос на старт индексации получен, инкрементальная: {}", incremental);
 
         if (!indexingStateManager.startIndexingManage()) {
             return ResponseEntity.ok(new ApiResponse(false, "Индексация уже запущена"));
@@ -27,7 +60,11 @@ public class IndexingSitesImpl implements IndexingSitesService {
 
         new Thread(() -> {
             try {
-                pageProcessService.indexingAllSites();
+                if (incremental) {
+                    pageProcessService.refreshAllSites();
+                } else {
+                    pageProcessService.indexingAllSites();
+                }
             } finally {
                 indexingStateManager.stopIndexingManage();
             }
@@ -47,6 +84,49 @@ public class IndexingSitesImpl implements IndexingSitesService {
         return ResponseEntity.ok(new ApiResponse(true));
     }
 
+    @Override
+    public ResponseEntity<ApiResponse> startIndexingSite(String url, boolean incremental) {
+        Optional<Site> site = repositoryManager.findConfiguredSite(url);
+        if (site.isEmpty()) {
+            return ResponseEntity.ok(new ApiResponse(false, "Данный сайт не указан в конфигурационном файле"));
+        }
+        String siteUrl = site.get().getUrl();
+        if (!indexingStateManager.startSiteIndexingManage(siteUrl)) {
+            return ResponseEntity.ok(new ApiResponse(false, "Индексация уже запущена"));
+        }
+
+        siteJobExecutor.execute(() -> {
+            try {
+                pageProcessService.indexSite(siteUrl, incremental);
+            } catch (Exception e) {
+                log.error("Ошибка при индексации сайта {}", siteUrl, e);
+            } finally {
+                indexingStateManager.stopSiteIndexingManage(siteUrl);
+            }
+        });
+        return ResponseEntity.ok(new ApiResponse(true));
+    }
+
+    @Override
+    public ResponseEntity<ApiResponse> stopIndexingSite(String url) {
+        Optional<Site> site = repositoryManager.findConfiguredSite(url);
+        if (site.isEmpty() || !indexingStateManager.isSiteIndexingManage(site.get().getUrl())) {
+            return ResponseEntity.ok(new ApiResponse(false, "Индексация сайта не запущена"));
+        }
+        pageProcessService.stopSite(site.get().getUrl());
+        return ResponseEntity.ok(new ApiResponse(true));
+    }
+
+    @Override
+    public List<SiteJobStatus> getSiteJobs() {
+        return statusManager.getSiteProgress();
+    }
+
+    @Override
+    public List<PipelineStageStatistics> getPipelineStatistics() {
+        return crawlEngine.getStageStatistics();
+    }
+
     @Override
     public ResponseEntity<ApiResponse> indexPage(String path) {
         try {
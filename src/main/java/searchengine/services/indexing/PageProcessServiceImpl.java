@@ -4,18 +4,24 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
+import searchengine.config.Site;
+import searchengine.dto.indexing.PageText;
 import searchengine.exceptions.SiteExceptions;
-import searchengine.services.managers.ForkJoinPoolManager;
 import searchengine.entity.PageEntity;
 import searchengine.entity.SiteEntity;
+import searchengine.services.indexing.interfaces.CrawlEngine;
 import searchengine.services.indexing.interfaces.PageProcessService;
+import searchengine.services.managers.IndexGeneration;
+import searchengine.services.managers.LemmaDictionary;
+import searchengine.services.managers.LemmaIndexBatchWriter;
+import searchengine.services.managers.RecrawlSessionManager;
 import searchengine.services.managers.RepositoryManager;
 import searchengine.services.managers.StatusManager;
 import searchengine.services.managers.VisitedUrlsManager;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
@@ -25,24 +31,94 @@ public class PageProcessServiceImpl implements PageProcessService {
     private final StatusManager statusManager;
     private final VisitedUrlsManager visitedUrlsManager;
     private final RepositoryManager repositoryManager;
-    private final ForkJoinPoolManager forkJoinPoolManager;
+    private final CrawlEngine crawlEngine;
     private final SiteTaskService siteTaskService;
+    private final LemmaIndexBatchWriter lemmaIndexBatchWriter;
+    private final LemmaDictionary lemmaDictionary;
+    private final RecrawlSessionManager recrawlSessionManager;
+    private final IndexGeneration indexGeneration;
 
     @Override
     public void indexingAllSites() {
         log.info("Начало индексации всех сайтов");
+        lemmaDictionary.clear();
         repositoryManager.truncateAllSiteAndPages();
         List<SiteEntity> siteEntityList = repositoryManager.getListSiteEntity();
-        forkJoinPoolManager.restartIfNeeded();
+        crawlEngine.restartIfNeeded();
+        long startedAt = System.nanoTime();
         parseSites(siteEntityList);
+        logCrawlRate(startedAt);
         stopIndexing();
         visitedUrlsManager.clearAllSitesUrls(siteEntityList);
     }
 
+    @Override
+    public void refreshAllSites() {
+        log.info("Начало инкрементальной индексации всех сайтов");
+        List<SiteEntity> siteEntityList = repositoryManager.getOrCreateSiteEntities();
+        siteEntityList.forEach(recrawlSessionManager::begin);
+        crawlEngine.restartIfNeeded();
+        long startedAt = System.nanoTime();
+        try {
+            parseSites(siteEntityList);
+            logCrawlRate(startedAt);
+            removeDisappearedPages(siteEntityList);
+        } finally {
+            siteEntityList.forEach(recrawlSessionManager::finish);
+        }
+        stopIndexing();
+        visitedUrlsManager.clearAllSitesUrls(siteEntityList);
+    }
+
+    @Override
+    public void indexSite(String url, boolean incremental) {
+        Site site = repositoryManager.findConfiguredSite(url)
+                .orElseThrow(() -> new IllegalArgumentException("Данный сайт не указан в конфигурационном файле"));
+        log.info("Начало индексации сайта {}, инкрементальная: {}", site.getUrl(), incremental);
+
+        SiteEntity siteEntity = repositoryManager.getOrCreateSiteEntity(site);
+        List<SiteEntity> siteEntityList = List.of(siteEntity);
+        lemmaIndexBatchWriter.flush();
+        lemmaDictionary.dropSite(siteEntity.getId());
+        visitedUrlsManager.clearUrls(siteEntity);
+        if (incremental) {
+            recrawlSessionManager.begin(siteEntity);
+        } else {
+            repositoryManager.deleteSiteData(siteEntity);
+        }
+
+        crawlEngine.restartIfNeeded();
+        long startedAt = System.nanoTime();
+        try {
+            parseSites(siteEntityList);
+            log.info("Сайт {} обойден за {} мс", site.getUrl(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+            if (incremental) {
+                removeDisappearedPages(siteEntityList);
+            }
+        } finally {
+            recrawlSessionManager.finish(siteEntity);
+        }
+        if (statusManager.isStopRequested(siteEntity)) {
+            statusManager.updateStatusSiteFailed(siteEntity, "Индексация сайта остановлена пользователем");
+        }
+    }
+
+    @Override
+    public void stopSite(String url) {
+        Site site = repositoryManager.findConfiguredSite(url)
+                .orElseThrow(() -> new IllegalArgumentException("Данный сайт не указан в конфигурационном файле"));
+        SiteEntity siteEntity = repositoryManager.getSiteForSearchService(site.getUrl());
+        if (siteEntity != null) {
+            log.warn("Остановка индексации сайта {}", site.getUrl());
+            statusManager.requestStop(siteEntity);
+        }
+    }
+
     @Override
     public void stopIndexingNow() {
         log.warn("Принудительная остановка индексации!");
-        forkJoinPoolManager.shutdownNow();
+        crawlEngine.shutdownNow();
+        lemmaIndexBatchWriter.flush();
         String message = "Индексация остановлена пользователем";
         List<SiteEntity> siteEntityList = repositoryManager.getAllSitesFromRepository();
         statusManager.updateStatusesWhenUserStop(siteEntityList, message);
@@ -51,7 +127,7 @@ public class PageProcessServiceImpl implements PageProcessService {
 
     @Override
     public void stopIndexing() {
-        forkJoinPoolManager.shutdown();
+        crawlEngine.shutdown();
     }
 
     @Override
@@ -64,6 +140,7 @@ public class PageProcessServiceImpl implements PageProcessService {
         }
 
         SiteEntity siteEntity = siteEntityOpt.get();
+        lemmaIndexBatchWriter.flush();
         repositoryManager.deletePageAndAssociatedData(url, siteEntity);
 
         Document document = siteTaskService.loadPageDocument(url);
@@ -73,8 +150,10 @@ public class PageProcessServiceImpl implements PageProcessService {
         }
 
         String uri = url.substring(siteEntity.getUrl().length());
-        PageEntity pageEntity = repositoryManager.processPage(uri, document, siteEntity);
-        siteTaskService.processLemmas(document, siteEntity, pageEntity);
+        PageText pageText = siteTaskService.lemmatize(document);
+        PageEntity pageEntity = repositoryManager.processPage(uri, document, pageText, siteEntity);
+        siteTaskService.processLemmas(pageText, siteEntity, pageEntity);
+        lemmaIndexBatchWriter.flush();
         log.info("Реиндекс URL: {} успешен", url);
     }
 
@@ -83,29 +162,42 @@ public class PageProcessServiceImpl implements PageProcessService {
             log.warn("Список сайтов для индексации пуст");
             return;
         }
-        List<SiteTaskRecursive> siteTasks = createSiteTasks(sites);
-        log.info("Запускаем задачи ForkJoinPool. Количество задач: {}", siteTasks.size());
-        forkJoinPoolManager.executeTasks(siteTasks);
+        for (SiteEntity siteEntity : sites) {
+            statusManager.initializeSite(siteEntity);
+            log.info("Начинаем парсинг: {}", siteEntity.getUrl());
+            visitedUrlsManager.isUrlVisited(siteEntity, siteEntity.getUrl());
+        }
+        crawlEngine.crawl(sites);
+        lemmaIndexBatchWriter.flush();
+        indexGeneration.advance();
+        sites.forEach(site -> lemmaDictionary.dropSite(site.getId()));
+        sites.forEach(statusManager::finishSiteProgress);
         statusManager.updateAllSitesIndexed(sites);
         visitedUrlsManager.clearAllSitesUrls(sites);
     }
 
-    private List<SiteTaskRecursive> createSiteTasks(List<SiteEntity> sites) {
-        List<SiteTaskRecursive> tasks = new ArrayList<>();
+    private void removeDisappearedPages(List<SiteEntity> sites) {
+        if (crawlEngine.isIndexingStopped()) {
+            log.warn("Обход прерван, исчезнувшие страницы не удаляем");
+            return;
+        }
         for (SiteEntity siteEntity : sites) {
-            statusManager.initializeSite(siteEntity);
-            log.info("Начинаем парсинг: {}", siteEntity.getUrl());
-            tasks.add(new SiteTaskRecursive(
-                    siteEntity.getUrl(),
-                    siteEntity,
-                    statusManager,
-                    repositoryManager,
-                    siteTaskService,
-                    visitedUrlsManager,
-                    forkJoinPoolManager
-            ));
-            visitedUrlsManager.isUrlVisited(siteEntity.getUrl());
+            if (statusManager.hasSiteErrors(siteEntity) || statusManager.isStopRequested(siteEntity)) {
+                log.warn("Обход сайта {} завершился с ошибкой, исчезнувшие страницы не удаляем", siteEntity.getUrl());
+                continue;
+            }
+            int removed = repositoryManager.deletePagesExcept(siteEntity, recrawlSessionManager.finish(siteEntity));
+            log.info("Сайт {}: удалено исчезнувших страниц: {}", siteEntity.getUrl(), removed);
         }
-        return tasks;
+    }
+
+    private void logCrawlRate(long startedAt) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        int pages = repositoryManager.getTotalPageCount();
+        double pagesPerSecond = elapsedMillis > 0 ? pages * 1000.0 / elapsedMillis : pages;
+        log.info("Обход завершен движком {}: {} страниц за {} мс ({} стр/с)",
+                crawlEngine.getClass().getSimpleName(), pages, elapsedMillis, String.format("%.2f", pagesPerSecond));
+        log.info("Пакетная запись лемм и индексов: {} строк, {} строк/с",
+                lemmaIndexBatchWriter.getTotalRows(), String.format("%.0f", lemmaIndexBatchWriter.getRowsPerSecond()));
     }
 }
@@ -0,0 +1,229 @@
+package searchengine.services.indexing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.dto.indexing.PageText;
+import searchengine.dto.indexing.PipelineStageStatistics;
+import searchengine.entity.SiteEntity;
+import searchengine.entity.Status;
+import searchengine.services.indexing.interfaces.CrawlEngine;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Обход сайтов конвейером: загрузка → лемматизация → запись. У каждой стадии свой пул,
+ * между стадиями ограниченные очереди, поэтому медленная запись притормаживает загрузку,
+ * а не накапливает страницы в памяти.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "crawler.engine", havingValue = "pipeline")
+public class PipelineCrawlEngine implements CrawlEngine {
+
+    private final SiteTaskService siteTaskService;
+    private final PipelineStage<FetchTask> fetchStage;
+    private final PipelineStage<PageWork> lemmatizeStage;
+    private final PipelineStage<PageWork> persistStage;
+    private final Set<SiteCrawl> activeCrawls = ConcurrentHashMap.newKeySet();
+    private volatile boolean isStopIndexing = false;
+
+    public PipelineCrawlEngine(CrawlerSettings crawlerSettings, SiteTaskService siteTaskService) {
+        CrawlerSettings.Pipeline settings = crawlerSettings.getPipeline();
+        this.siteTaskService = siteTaskService;
+        this.fetchStage = new PipelineStage<>("fetch", settings.getFetchWorkers(), 0, this::fetch);
+        this.lemmatizeStage = new PipelineStage<>("lemmatize", settings.getLemmatizeWorkers(), settings.getQueueCapacity(), this::lemmatize);
+        this.persistStage = new PipelineStage<>("persist", settings.getPersistWorkers(), settings.getQueueCapacity(), this::persist);
+    }
+
+    @Override
+    public void crawl(List<SiteEntity> sites) {
+        restartIfNeeded();
+        List<SiteCrawl> crawls = sites.stream().map(SiteCrawl::new).toList();
+        activeCrawls.addAll(crawls);
+        try {
+            crawls.forEach(crawl -> crawl.submit(crawl.siteEntity.getUrl()));
+            for (SiteCrawl crawl : crawls) {
+                crawl.await();
+            }
+        } finally {
+            activeCrawls.removeAll(crawls);
+        }
+        getStageStatistics().forEach(stage -> log.info("Стадия {}: обработано {}, {} в секунду",
+                stage.getStage(), stage.getProcessed(), String.format("%.2f", stage.getThroughputPerSecond())));
+    }
+
+    @Override
+    public synchronized void restartIfNeeded() {
+        if (isStopIndexing) {
+            log.warn("Конвейер индексации был остановлен, перезапускаем...");
+            isStopIndexing = false;
+        }
+        persistStage.start();
+        lemmatizeStage.start();
+        fetchStage.start();
+    }
+
+    @Override
+    public void shutdown() {
+        if (!activeCrawls.isEmpty()) {
+            return;
+        }
+        log.info("Остановка конвейера индексации...");
+        fetchStage.stop();
+        lemmatizeStage.stop();
+        persistStage.stop();
+    }
+
+    @Override
+    public void shutdownNow() {
+        log.warn("Принудительная остановка конвейера индексации!");
+        isStopIndexing = true;
+        fetchStage.stop();
+        lemmatizeStage.stop();
+        persistStage.stop();
+        try {
+            persistStage.awaitStop(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        activeCrawls.forEach(SiteCrawl::release);
+    }
+
+    @Override
+    public boolean isIndexingStopped() {
+        return isStopIndexing;
+    }
+
+    @Override
+    public List<PipelineStageStatistics> getStageStatistics() {
+        return List.of(fetchStage.statistics(), lemmatizeStage.statistics(), persistStage.statistics());
+    }
+
+    private void fetch(FetchTask task) {
+        SiteCrawl crawl = task.crawl();
+        SiteEntity siteEntity = crawl.siteEntity;
+        boolean handedOver = false;
+        try {
+            if (isStopped(siteEntity) || !siteTaskService.isValidUrl(task.url(), siteEntity)) {
+                return;
+            }
+            FetchedPage page = siteTaskService.fetchForIndexing(task.url(), siteEntity);
+            siteTaskService.collectNewLinks(page.getDocument(), siteEntity).forEach(crawl::submit);
+            if (!page.isChanged()) {
+                siteTaskService.markPageIndexed(siteEntity);
+                return;
+            }
+            lemmatizeStage.put(new PageWork(crawl, task.url(), page));
+            handedOver = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Ошибка при обработке страницы: {}", task.url(), e);
+            siteTaskService.handlePageError(task.url(), e, siteEntity);
+        } finally {
+            if (!handedOver) {
+                crawl.complete();
+            }
+        }
+    }
+
+    private void lemmatize(PageWork work) {
+        boolean handedOver = false;
+        try {
+            if (isStopped(work.crawl.siteEntity)) {
+                return;
+            }
+            work.text = siteTaskService.lemmatize(work.page.getDocument());
+            persistStage.put(work);
+            handedOver = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Ошибка при лемматизации страницы: {}", work.url, e);
+        } finally {
+            if (!handedOver) {
+                work.crawl.complete();
+            }
+        }
+    }
+
+    private void persist(PageWork work) {
+        SiteEntity siteEntity = work.crawl.siteEntity;
+        try {
+            siteTaskService.storePage(work.page, siteEntity, work.text);
+            siteTaskService.markPageIndexed(siteEntity);
+        } catch (Exception e) {
+            log.error("Ошибка при сохранении страницы: {}", work.url, e);
+            siteTaskService.handlePageError(work.url, e, siteEntity);
+        } finally {
+            work.crawl.complete();
+        }
+    }
+
+    private boolean isStopped(SiteEntity siteEntity) {
+        return isStopIndexing || siteEntity.getStatus() == Status.FAILED || siteTaskService.isStopRequested(siteEntity);
+    }
+
+    private record FetchTask(SiteCrawl crawl, String url) {
+    }
+
+    private static class PageWork {
+        private final SiteCrawl crawl;
+        private final String url;
+        private final FetchedPage page;
+        private PageText text;
+
+        private PageWork(SiteCrawl crawl, String url, FetchedPage page) {
+            this.crawl = crawl;
+            this.url = url;
+            this.page = page;
+        }
+    }
+
+    private class SiteCrawl {
+
+        private final SiteEntity siteEntity;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private SiteCrawl(SiteEntity siteEntity) {
+            this.siteEntity = siteEntity;
+        }
+
+        private void submit(String url) {
+            pending.incrementAndGet();
+            try {
+                fetchStage.put(new FetchTask(this, url));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        private void release() {
+            done.countDown();
+        }
+
+        private void await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                log.warn("Ожидание обхода сайта {} прервано", siteEntity.getUrl());
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
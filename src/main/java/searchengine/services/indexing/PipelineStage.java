@@ -0,0 +1,97 @@
+package searchengine.services.indexing;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.dto.indexing.PipelineStageStatistics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Стадия конвейера индексации: очередь и собственный пул обработчиков.
+ * При capacity > 0 очередь ограничена и put блокирует предыдущую стадию, пока эта не разгрузится.
+ */
+@Slf4j
+class PipelineStage<T> {
+
+    private final String name;
+    private final int workers;
+    private final int capacity;
+    private final BlockingQueue<T> queue;
+    private final Consumer<T> handler;
+    private final LongAdder processed = new LongAdder();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private ExecutorService executor;
+    private long startedAt;
+
+    PipelineStage(String name, int workers, int capacity, Consumer<T> handler) {
+        this.name = name;
+        this.workers = workers;
+        this.capacity = capacity;
+        this.queue = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : new LinkedBlockingQueue<>();
+        this.handler = handler;
+    }
+
+    synchronized void start() {
+        if (executor != null && !executor.isShutdown()) {
+            return;
+        }
+        queue.clear();
+        processed.reset();
+        startedAt = System.nanoTime();
+        executor = Executors.newFixedThreadPool(workers, task -> new Thread(task, name + "-" + threadCounter.incrementAndGet()));
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::work);
+        }
+    }
+
+    void put(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    boolean awaitStop(long timeout, TimeUnit unit) throws InterruptedException {
+        ExecutorService current = executor;
+        return current == null || current.awaitTermination(timeout, unit);
+    }
+
+    PipelineStageStatistics statistics() {
+        PipelineStageStatistics statistics = new PipelineStageStatistics();
+        statistics.setStage(name);
+        statistics.setWorkers(workers);
+        statistics.setQueueDepth(queue.size());
+        statistics.setQueueCapacity(capacity);
+        statistics.setProcessed(processed.sum());
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        statistics.setThroughputPerSecond(seconds > 0 ? processed.sum() / seconds : 0);
+        return statistics;
+    }
+
+    private void work() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                T item = queue.take();
+                try {
+                    handler.accept(item);
+                } catch (Exception e) {
+                    log.error("Ошибка на стадии {}", name, e);
+                } finally {
+                    processed.increment();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
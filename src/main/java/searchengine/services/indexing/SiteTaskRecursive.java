@@ -3,19 +3,11 @@ package searchengine.services.indexing;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 import searchengine.entity.Status;
 import searchengine.exceptions.SiteExceptions;
 import searchengine.services.managers.ForkJoinPoolManager;
-import searchengine.entity.PageEntity;
 import searchengine.entity.SiteEntity;
-import searchengine.services.managers.RepositoryManager;
-import searchengine.services.managers.StatusManager;
-import searchengine.services.managers.VisitedUrlsManager;
-import searchengine.utility.ConnectionUtil;
-import searchengine.utility.UtilCheck;
 
-import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
@@ -26,10 +18,7 @@ public class SiteTaskRecursive extends RecursiveAction {
 
     private final String url;
     private final SiteEntity siteEntity;
-    private final StatusManager statusManager;
-    private final RepositoryManager repositoryManager;
     private final SiteTaskService siteTaskService;
-    private final VisitedUrlsManager visitedUrlsManager;
     private final ForkJoinPoolManager forkJoinPoolManager;
 
     @Override
@@ -41,7 +30,7 @@ public class SiteTaskRecursive extends RecursiveAction {
         }
 
         try {
-            if (forkJoinPoolManager.isIndexingStopped()) {
+            if (forkJoinPoolManager.isIndexingStopped() || siteTaskService.isStopRequested(siteEntity)) {
                 log.warn("Индексация остановлена, прерываем задачу для {}", url);
                 return;
             }
@@ -49,10 +38,7 @@ public class SiteTaskRecursive extends RecursiveAction {
                 log.debug("URL {} не соответствует корню сайта, пропускаем", url);
                 return;
             }
-            Document doc = siteTaskService.loadPageDocument(url);
-            String uri = url.substring(siteEntity.getUrl().length());
-            PageEntity pageEntity = repositoryManager.processPage(uri, doc, siteEntity);
-            siteTaskService.processLemmas(doc, siteEntity, pageEntity);
+            Document doc = siteTaskService.indexPage(url, siteEntity);
 
 /*Реализация с изменением статуса с failed на indexing если следующая задача успешно обработана
             if (statusManager.hasSiteErrors(siteEntity)) {
@@ -60,42 +46,21 @@ public class SiteTaskRecursive extends RecursiveAction {
             }
 */
 
-            Elements links = doc.select("a[href]");
-            Set<SiteTaskRecursive> subTasks = createSubTasks(links);
+            Set<SiteTaskRecursive> subTasks = createSubTasks(doc);
             invokeAll(subTasks);
         } catch (Exception e) {
             log.error("Ошибка при обработке страницы: {}", url, e);
-            handleTaskError(url, e, siteEntity);
+            siteTaskService.handlePageError(url, e, siteEntity);
             throw new SiteExceptions("Ошибка при обработке страницы: " + url, e);
         }
     }
 
-    private Set<SiteTaskRecursive> createSubTasks(Elements links) {
-        if (siteEntity.getStatus() == Status.FAILED) {
-            log.warn("Сайт {} уже имеет статус FAILED, пропускаем создание подзадач", siteEntity.getUrl());
-            return Collections.emptySet();
-        }
-
-        return links.stream()
-                .map(link -> link.absUrl("href"))
-                .filter(subUrl -> {
-                    boolean isNew = visitedUrlsManager.isUrlVisited(subUrl);
-                    return !isNew && subUrl.startsWith(UtilCheck.reworkUrl(siteEntity.getUrl())) &&
-                            !subUrl.equals(siteEntity.getUrl());
-                })
+    private Set<SiteTaskRecursive> createSubTasks(Document doc) {
+        return siteTaskService.collectNewLinks(doc, siteEntity).stream()
                 .map(subUrl -> new SiteTaskRecursive(subUrl,
                         siteEntity,
-                        statusManager,
-                        repositoryManager,
                         siteTaskService,
-                        visitedUrlsManager,
                         forkJoinPoolManager))
                 .collect(Collectors.toSet());
     }
-
-    private void handleTaskError(String url, Exception e, SiteEntity siteEntity) {
-        int code = ConnectionUtil.getStatusCode(url);
-        statusManager.updateStatusPage(siteEntity, url, code != 0 ? code : 500);
-        statusManager.updateStatusSiteFailed(siteEntity, e.getMessage());
-    }
 }
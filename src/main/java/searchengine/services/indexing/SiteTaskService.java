@@ -3,18 +3,33 @@ package searchengine.services.indexing;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Connection;
+import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
-import searchengine.entity.LemmaEntity;
+import searchengine.dto.indexing.PageFetchResult;
+import searchengine.dto.indexing.PageText;
 import searchengine.entity.PageEntity;
 import searchengine.entity.SiteEntity;
+import searchengine.entity.Status;
+import searchengine.exceptions.SiteExceptions;
+import searchengine.services.managers.HostPolitenessManager;
+import searchengine.services.managers.LemmaIndexBatchWriter;
+import searchengine.services.managers.RecrawlSessionManager;
 import searchengine.services.managers.RepositoryManager;
+import searchengine.services.managers.StatusManager;
+import searchengine.services.managers.VisitedUrlsManager;
 import searchengine.utility.ConnectionUtil;
+import searchengine.utility.HashUtil;
 import searchengine.utility.LemmaExecute;
 import searchengine.utility.PropertiesProject;
 import searchengine.utility.UtilCheck;
 
-import java.util.Map;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -23,14 +38,69 @@ public class SiteTaskService {
 
     private final PropertiesProject property;
     private final RepositoryManager repositoryManager;
+    private final StatusManager statusManager;
+    private final VisitedUrlsManager visitedUrlsManager;
+    private final HostPolitenessManager hostPolitenessManager;
+    private final LemmaIndexBatchWriter lemmaIndexBatchWriter;
+    private final RecrawlSessionManager recrawlSessionManager;
 
     public Document loadPageDocument(String url) {
+        return fetchPage(url, null).getDocument();
+    }
+
+    public PageFetchResult fetchPage(String url, PageEntity previous) {
         try {
-            Connection connection = ConnectionUtil.getConnection(url, property.getReferrer(), property.getUserAgent());
-            return connection.get();
+            Connection.Response response = fetchPolitely(url,
+                    previous != null ? previous.getEtag() : null,
+                    previous != null ? previous.getLastModified() : null);
+            if (response == null) {
+                return new PageFetchResult(null, 0, null, null, null);
+            }
+            if (response.statusCode() == 304) {
+                return new PageFetchResult(null, 304, response.header("ETag"), response.header("Last-Modified"), null);
+            }
+            Document document = response.parse();
+            return new PageFetchResult(document, response.statusCode(),
+                    response.header("ETag"), response.header("Last-Modified"), HashUtil.contentHash(document));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Загрузка {} прервана", url);
         } catch (Exception e) {
             log.error("Не удалось установить соединение с {}", url);
-            return null;
+        }
+        return new PageFetchResult(null, 0, null, null, null);
+    }
+
+    private Connection.Response fetchPolitely(String url, String etag, String lastModified) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            Connection connection = ConnectionUtil.getConnection(url, property.getUserAgent(), property.getReferrer());
+            if (etag != null) {
+                connection.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                connection.header("If-Modified-Since", lastModified);
+            }
+            Connection.Response response = null;
+            hostPolitenessManager.acquire(url);
+            long startedAt = System.nanoTime();
+            try {
+                response = connection.execute();
+            } finally {
+                long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                hostPolitenessManager.release(url,
+                        response != null ? response.statusCode() : 0,
+                        latencyMillis,
+                        response != null ? response.header("Retry-After") : null);
+            }
+
+            if (!hostPolitenessManager.isThrottled(response.statusCode())) {
+                return response;
+            }
+            if (attempt >= hostPolitenessManager.getMaxRetries()) {
+                log.error("Хост продолжает ограничивать запросы ({}), отказываемся от {}", response.statusCode(), url);
+                return null;
+            }
+            log.warn("Ответ {} для {}, повтор {} из {}", response.statusCode(), url, attempt + 1, hostPolitenessManager.getMaxRetries());
         }
     }
 
@@ -39,19 +109,119 @@ public class SiteTaskService {
         return !UtilCheck.isFileUrl(url) && UtilCheck.containsSiteName(url, siteName);
     }
 
+    public boolean isStopRequested(SiteEntity siteEntity) {
+        return statusManager.isStopRequested(siteEntity);
+    }
 
-    public void processLemmas(Document document, SiteEntity siteEntity, PageEntity pageEntity) {
-        try {
-            String text = document.body().text();
-            Map<String, Integer> lemmaMap = LemmaExecute.getLemmaMap(text);
+    public Document indexPage(String url, SiteEntity siteEntity) {
+        FetchedPage page = fetchForIndexing(url, siteEntity);
+        if (page.isChanged()) {
+            storePage(page, siteEntity, lemmatize(page.getDocument()));
+        }
+        markPageIndexed(siteEntity);
+        return page.getDocument();
+    }
+
+    public FetchedPage fetchForIndexing(String url, SiteEntity siteEntity) {
+        String uri = url.substring(siteEntity.getUrl().length());
+        if (!recrawlSessionManager.isActive(siteEntity)) {
+            PageFetchResult fetch = requireDocument(url, fetchPage(url, null));
+            return new FetchedPage(uri, fetch, null, fetch.getDocument(), true);
+        }
 
-            for (Map.Entry<String, Integer> lemmaEntry : lemmaMap.entrySet()) {
-                String lemma = lemmaEntry.getKey();
-                Integer frequency = lemmaEntry.getValue();
+        Optional<PageEntity> existing = repositoryManager.findPage(siteEntity, uri);
+        PageFetchResult fetch = fetchPage(url, existing.orElse(null));
+        if (existing.isEmpty()) {
+            requireDocument(url, fetch);
+            return new FetchedPage(uri, fetch, null, fetch.getDocument(), true);
+        }
 
-                LemmaEntity lemmaEntity = repositoryManager.processAndSaveLemma(siteEntity, lemma);
-                repositoryManager.saveIndex(pageEntity, lemmaEntity, frequency);
-            }
+        PageEntity pageEntity = existing.get();
+        recrawlSessionManager.markSeen(siteEntity, pageEntity.getId());
+        if (fetch.isNotModified()) {
+            log.debug("Страница {} не изменилась (304)", url);
+            Document stored = Jsoup.parse(repositoryManager.getPageHtml(pageEntity), url);
+            return new FetchedPage(uri, fetch, pageEntity, stored, false);
+        }
+        requireDocument(url, fetch);
+        if (fetch.getContentHash().equals(pageEntity.getContentHash())) {
+            log.debug("Текст страницы {} не изменился", url);
+            repositoryManager.updatePageValidators(pageEntity, fetch);
+            return new FetchedPage(uri, fetch, pageEntity, fetch.getDocument(), false);
+        }
+        return new FetchedPage(uri, fetch, pageEntity, fetch.getDocument(), true);
+    }
+
+    /**
+     * Заголовок и видимый текст извлекаются один раз при индексации, вместе с леммами и позициями слов для сниппетов.
+     */
+    public PageText lemmatize(Document document) {
+        return LemmaExecute.getPageText(document);
+    }
+
+    public void storePage(FetchedPage page, SiteEntity siteEntity, PageText pageText) {
+        PageEntity pageEntity = page.getExisting();
+        if (pageEntity == null) {
+            pageEntity = repositoryManager.processPage(page.getUri(), page.getFetch(), pageText, siteEntity);
+            recrawlSessionManager.markSeen(siteEntity, pageEntity.getId());
+        } else {
+            repositoryManager.replacePageContent(pageEntity, page.getFetch(), pageText);
+        }
+        lemmaIndexBatchWriter.add(siteEntity.getId(), pageEntity.getId(), pageText.getLemmaMap());
+    }
+
+    public void markPageIndexed(SiteEntity siteEntity) {
+        statusManager.pageIndexed(siteEntity);
+    }
+
+    private PageFetchResult requireDocument(String url, PageFetchResult fetch) {
+        if (fetch.getDocument() == null) {
+            log.error("Ошибка: документ для URL {} не загружен", url);
+            throw new SiteExceptions("Ошибка загрузки страницы: " + url);
+        }
+        return fetch;
+    }
+
+    public Set<String> collectNewLinks(Document document, SiteEntity siteEntity) {
+        if (siteEntity.getStatus() == Status.FAILED) {
+            log.warn("Сайт {} уже имеет статус FAILED, пропускаем создание подзадач", siteEntity.getUrl());
+            return Collections.emptySet();
+        }
+
+        String siteUrl = UtilCheck.reworkUrl(siteEntity.getUrl());
+        return document.select("a[href]").stream()
+                .map(link -> link.absUrl("href"))
+                .filter(subUrl -> subUrl.startsWith(siteUrl) && !subUrl.equals(siteEntity.getUrl()))
+                .filter(subUrl -> !visitedUrlsManager.isUrlVisited(siteEntity, subUrl))
+                .collect(Collectors.toSet());
+    }
+
+    public void handlePageError(String url, Exception e, SiteEntity siteEntity) {
+        int code = getStatusCodePolitely(url);
+        statusManager.updateStatusPage(siteEntity, url, code != 0 ? code : 500);
+        statusManager.updateStatusSiteFailed(siteEntity, e.getMessage());
+    }
+
+    private int getStatusCodePolitely(String url) {
+        int code = 0;
+        try {
+            hostPolitenessManager.acquire(url);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 500;
+        }
+        long startedAt = System.nanoTime();
+        try {
+            code = ConnectionUtil.getStatusCode(url);
+            return code;
+        } finally {
+            hostPolitenessManager.release(url, code, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), null);
+        }
+    }
+
+    public void processLemmas(PageText pageText, SiteEntity siteEntity, PageEntity pageEntity) {
+        try {
+            lemmaIndexBatchWriter.add(siteEntity.getId(), pageEntity.getId(), pageText.getLemmaMap());
         } catch (Exception e) {
             log.error("Ошибка при обработке лемм для страницы: {}", e.getMessage());
         }
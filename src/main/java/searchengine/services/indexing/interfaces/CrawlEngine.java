@@ -0,0 +1,18 @@
+package searchengine.services.indexing.interfaces;
+
+import searchengine.dto.indexing.PipelineStageStatistics;
+import searchengine.entity.SiteEntity;
+
+import java.util.List;
+
+public interface CrawlEngine {
+    void crawl(List<SiteEntity> sites);
+    void restartIfNeeded();
+    void shutdown();
+    void shutdownNow();
+    boolean isIndexingStopped();
+
+    default List<PipelineStageStatistics> getStageStatistics() {
+        return List.of();
+    }
+}
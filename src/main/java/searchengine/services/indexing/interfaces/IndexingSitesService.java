@@ -1,10 +1,18 @@
 package searchengine.services.indexing.interfaces;
 
 import org.springframework.http.ResponseEntity;
+import searchengine.dto.indexing.PipelineStageStatistics;
+import searchengine.dto.indexing.SiteJobStatus;
 import searchengine.dto.response.ApiResponse;
 
+import java.util.List;
+
 public interface IndexingSitesService {
-    ResponseEntity<ApiResponse> startIndexing();
+    ResponseEntity<ApiResponse> startIndexing(boolean incremental);
     ResponseEntity<ApiResponse> indexPage(String page);
     ResponseEntity<ApiResponse> stopIndexing();
+    ResponseEntity<ApiResponse> startIndexingSite(String url, boolean incremental);
+    ResponseEntity<ApiResponse> stopIndexingSite(String url);
+    List<SiteJobStatus> getSiteJobs();
+    List<PipelineStageStatistics> getPipelineStatistics();
 }
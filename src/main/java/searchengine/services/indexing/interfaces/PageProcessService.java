@@ -2,6 +2,9 @@ package searchengine.services.indexing.interfaces;
 
 public interface PageProcessService {
     void indexingAllSites();
+    void refreshAllSites();
+    void indexSite(String url, boolean incremental);
+    void stopSite(String url);
     void reindexSinglePage(String path);
     void stopIndexing();
     void stopIndexingNow();
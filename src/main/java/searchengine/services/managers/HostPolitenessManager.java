@@ -0,0 +1,148 @@
+package searchengine.services.managers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.PolitenessSettings;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничивает нагрузку на каждый хост: не больше maxConnectionsPerHost одновременных запросов,
+ * скорость по token bucket и пауза между запросами, которая растет вместе с задержкой ответов
+ * и при ответах 429/503 (с учетом заголовка Retry-After).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HostPolitenessManager {
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final double BACKOFF_GROWTH = 2.0;
+    private static final double BACKOFF_DECAY = 0.9;
+    private static final double MAX_BACKOFF = 64.0;
+
+    private final PolitenessSettings settings;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    public void acquire(String url) throws InterruptedException {
+        HostState state = hostState(url);
+        state.connections.acquire();
+        try {
+            long waitNanos;
+            while ((waitNanos = state.reserve()) > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            state.connections.release();
+            throw e;
+        }
+    }
+
+    public void release(String url, int statusCode, long latencyMillis, String retryAfter) {
+        HostState state = hostState(url);
+        try {
+            state.record(statusCode, latencyMillis, parseRetryAfterMillis(retryAfter));
+        } finally {
+            state.connections.release();
+        }
+    }
+
+    public boolean isThrottled(int statusCode) {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    public int getMaxRetries() {
+        return settings.getMaxRetries();
+    }
+
+    private HostState hostState(String url) {
+        return hosts.computeIfAbsent(hostOf(url), host -> new HostState());
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase() : url;
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    private long parseRetryAfterMillis(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException ignored) {
+            // Retry-After может быть датой
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+        } catch (DateTimeParseException e) {
+            log.debug("Не удалось разобрать Retry-After: {}", retryAfter);
+            return 0;
+        }
+    }
+
+    private class HostState {
+
+        private final Semaphore connections = new Semaphore(settings.getMaxConnectionsPerHost(), true);
+        private double tokens = settings.getBurst();
+        private long lastRefillNanos = System.nanoTime();
+        private long nextAllowedNanos = System.nanoTime();
+        private double latencyMillis;
+        private double backoff = 1.0;
+
+        /**
+         * Возвращает 0, если запрос можно отправлять сейчас (токен и слот по времени заняты),
+         * иначе сколько наносекунд нужно подождать перед повторной попыткой.
+         */
+        private synchronized long reserve() {
+            long now = System.nanoTime();
+            double rate = settings.getRequestsPerSecond() / backoff;
+            tokens = Math.min(settings.getBurst(), tokens + (now - lastRefillNanos) / 1e9 * rate);
+            lastRefillNanos = now;
+
+            if (now < nextAllowedNanos) {
+                return nextAllowedNanos - now;
+            }
+            if (tokens < 1.0) {
+                return (long) ((1.0 - tokens) / rate * 1e9);
+            }
+            tokens -= 1.0;
+            nextAllowedNanos = now + TimeUnit.MILLISECONDS.toNanos(currentDelayMillis());
+            return 0;
+        }
+
+        private synchronized void record(int statusCode, long observedLatencyMillis, long retryAfterMillis) {
+            latencyMillis = latencyMillis == 0
+                    ? observedLatencyMillis
+                    : latencyMillis + LATENCY_SMOOTHING * (observedLatencyMillis - latencyMillis);
+
+            if (statusCode == 0 || isThrottled(statusCode)) {
+                backoff = Math.min(MAX_BACKOFF, backoff * BACKOFF_GROWTH);
+                long pauseMillis = Math.min(settings.getMaxDelayMs(), Math.max(retryAfterMillis, currentDelayMillis()));
+                nextAllowedNanos = Math.max(nextAllowedNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+                log.warn("Хост ответил {}, пауза {} мс, коэффициент замедления {}", statusCode, pauseMillis, backoff);
+            } else {
+                backoff = Math.max(1.0, backoff * BACKOFF_DECAY);
+            }
+        }
+
+        private long currentDelayMillis() {
+            double delay = Math.max(settings.getMinDelayMs(), latencyMillis * settings.getLatencyFactor()) * backoff;
+            return (long) Math.min(settings.getMaxDelayMs(), delay);
+        }
+    }
+}
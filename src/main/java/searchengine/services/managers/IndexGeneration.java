@@ -0,0 +1,23 @@
+package searchengine.services.managers;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Номер поколения индекса: растет после каждой зафиксированной записи страниц, индексов или удалений.
+ * Результаты, посчитанные на старом поколении, считаются устаревшими.
+ */
+@Component
+public class IndexGeneration {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    public long current() {
+        return generation.get();
+    }
+
+    public void advance() {
+        generation.incrementAndGet();
+    }
+}
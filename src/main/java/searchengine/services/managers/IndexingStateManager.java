@@ -3,22 +3,44 @@ package searchengine.services.managers;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 @Service
 public class IndexingStateManager {
     private final AtomicBoolean indexing = new AtomicBoolean(false);
+    private final Set<String> indexingSites = ConcurrentHashMap.newKeySet();
 
     public boolean isIndexingManage() {
         return indexing.get();
     }
 
-    public boolean startIndexingManage() {
+    public synchronized boolean startIndexingManage() {
+        if (!indexingSites.isEmpty()) {
+            log.warn("Идет индексация отдельных сайтов: {}", indexingSites);
+            return false;
+        }
         return indexing.compareAndSet(false, true);
     }
 
     public boolean stopIndexingManage() {
         return indexing.compareAndSet(true, false);
     }
+
+    public synchronized boolean startSiteIndexingManage(String siteUrl) {
+        if (indexing.get()) {
+            return false;
+        }
+        return indexingSites.add(siteUrl);
+    }
+
+    public boolean isSiteIndexingManage(String siteUrl) {
+        return indexingSites.contains(siteUrl);
+    }
+
+    public void stopSiteIndexingManage(String siteUrl) {
+        indexingSites.remove(siteUrl);
+    }
 }
@@ -0,0 +1,78 @@
+package searchengine.services.managers;
+
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Словарь лемм каждого сайта на время обхода. Выдает лемме локальный номер без блокировок,
+ * считает частоту (число страниц) в LongAdder и помнит id строки в lemmas после первой записи.
+ * В базу частоты уходят пачками через {@link LemmaIndexBatchWriter} по числу записанных строк индекса.
+ */
+@Component
+public class LemmaDictionary {
+
+    private final Map<Integer, SiteDictionary> sites = new ConcurrentHashMap<>();
+
+    public LemmaSlot register(int siteId, String lemma) {
+        LemmaSlot slot = sites.computeIfAbsent(siteId, SiteDictionary::new).slotFor(lemma);
+        slot.frequency.increment();
+        return slot;
+    }
+
+    public int size(int siteId) {
+        SiteDictionary dictionary = sites.get(siteId);
+        return dictionary == null ? 0 : dictionary.slots.size();
+    }
+
+    public void dropSite(int siteId) {
+        sites.remove(siteId);
+    }
+
+    public void clear() {
+        sites.clear();
+    }
+
+    @Getter
+    public static class LemmaSlot {
+        private final int siteId;
+        private final String lemma;
+        private final int localId;
+        private final LongAdder frequency = new LongAdder();
+        private volatile int lemmaId;
+
+        private LemmaSlot(int siteId, String lemma, int localId) {
+            this.siteId = siteId;
+            this.lemma = lemma;
+            this.localId = localId;
+        }
+
+        void markFlushed(int lemmaId) {
+            this.lemmaId = lemmaId;
+        }
+    }
+
+    private static class SiteDictionary {
+        private final int siteId;
+        private final Map<String, LemmaSlot> slots = new ConcurrentHashMap<>();
+        private final AtomicInteger nextLocalId = new AtomicInteger();
+
+        private SiteDictionary(int siteId) {
+            this.siteId = siteId;
+        }
+
+        private LemmaSlot slotFor(String lemma) {
+            LemmaSlot slot = slots.get(lemma);
+            if (slot != null) {
+                return slot;
+            }
+            LemmaSlot created = new LemmaSlot(siteId, lemma, nextLocalId.getAndIncrement());
+            slot = slots.putIfAbsent(lemma, created);
+            return slot != null ? slot : created;
+        }
+    }
+}
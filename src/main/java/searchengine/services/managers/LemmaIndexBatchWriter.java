@@ -0,0 +1,374 @@
+package searchengine.services.managers;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.BatchWriterSettings;
+import searchengine.services.search.index.InvertedIndex;
+import searchengine.services.search.scoring.DocumentFrequencyTable;
+import searchengine.services.search.scoring.DocumentStatistics;
+import searchengine.services.store.IndexStore;
+import searchengine.services.managers.LemmaDictionary.LemmaSlot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Накапливает индексы страниц и записывает их пачками. Леммы пачки уходят в lemmas многострочным upsert
+ * (частота увеличивается на число страниц пачки с этой леммой), затем индексы вставляются многострочными
+ * INSERT в indexes_table, а длины страниц (число лемм) — в page.length. Если транзакция не прошла, пачка
+ * возвращается в начало буфера, и запись повторяется с растущей паузой до {@link #MAX_RETRY_DELAY_MS}.
+ * После {@code max-attempts} неудач пачка пишется по страницам, а страницы, строки которых отвергает БД
+ * (например, удаленные до записи), пропускаются. Сверх {@code max-buffered-rows} строк в буфере потоки обхода
+ * ждут записи.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LemmaIndexBatchWriter {
+
+    private static final int ROWS_PER_STATEMENT = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+
+    private static final String UPSERT_LEMMAS_PREFIX =
+            "INSERT INTO sites_parsing.lemmas AS l (site_id, lemma, frequency) VALUES ";
+    private static final String UPSERT_LEMMAS_SUFFIX =
+            " ON CONFLICT (site_id, lemma) DO UPDATE SET frequency = l.frequency + EXCLUDED.frequency" +
+            " RETURNING id, site_id, lemma";
+    private static final String INSERT_INDEXES_PREFIX =
+            "INSERT INTO sites_parsing.indexes_table (page_id, lemma_id, rank) VALUES ";
+    private static final String UPDATE_LENGTHS_PREFIX =
+            "UPDATE sites_parsing.page AS p SET length = v.length FROM (VALUES ";
+    private static final String UPDATE_LENGTHS_SUFFIX =
+            ") AS v(id, length) WHERE p.id = v.id";
+
+    private final BatchWriterSettings settings;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final LemmaDictionary lemmaDictionary;
+    private final InvertedIndex invertedIndex;
+    private final DocumentStatistics documentStatistics;
+    private final DocumentFrequencyTable documentFrequencyTable;
+    private final IndexGeneration indexGeneration;
+    private final IndexStore indexStore;
+
+    private final Object bufferLock = new Object();
+    private final Object flushLock = new Object();
+    private List<IndexRow> buffer = new ArrayList<>();
+    private List<PageLength> lengthBuffer = new ArrayList<>();
+
+    private volatile int failedAttempts;
+    private volatile long retryAtNanos;
+
+    private final AtomicLong totalRows = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void startScheduler() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "lemma-batch-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly,
+                settings.getFlushIntervalMs(), settings.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopScheduler() {
+        scheduler.shutdown();
+        failedAttempts = 0;
+        flushQuietly();
+    }
+
+    public void add(int siteId, int pageId, Map<String, Integer> lemmaRanks) {
+        if (lemmaRanks.isEmpty()) {
+            return;
+        }
+        awaitCapacity();
+        List<IndexRow> rows = new ArrayList<>(lemmaRanks.size());
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : lemmaRanks.entrySet()) {
+            LemmaSlot slot = lemmaDictionary.register(siteId, entry.getKey());
+            rows.add(new IndexRow(pageId, slot, entry.getValue()));
+            length += entry.getValue();
+        }
+        boolean flushNeeded;
+        synchronized (bufferLock) {
+            buffer.addAll(rows);
+            lengthBuffer.add(new PageLength(siteId, pageId, length));
+            flushNeeded = buffer.size() >= settings.getFlushSize() && !isBackingOff();
+        }
+        if (flushNeeded) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        synchronized (flushLock) {
+            List<IndexRow> batch;
+            List<PageLength> lengths;
+            synchronized (bufferLock) {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                batch = buffer;
+                lengths = lengthBuffer;
+                buffer = new ArrayList<>();
+                lengthBuffer = new ArrayList<>();
+                bufferLock.notifyAll();
+            }
+            long startedAt = System.nanoTime();
+            int written;
+            try {
+                written = write(batch, lengths);
+            } catch (RuntimeException e) {
+                if (failedAttempts + 1 < settings.getMaxAttempts()) {
+                    requeue(batch, lengths);
+                    throw e;
+                }
+                log.warn("Пачка из {} индексов не записана за {} попыток, запись по страницам: {}",
+                        batch.size(), settings.getMaxAttempts(), e.getMessage());
+                written = writeByPage(new ArrayList<>(batch), new ArrayList<>(lengths));
+            }
+            failedAttempts = 0;
+            long elapsedNanos = System.nanoTime() - startedAt;
+
+            totalRows.addAndGet(written);
+            totalFlushNanos.addAndGet(elapsedNanos);
+            log.debug("Записано {} строк лемм и индексов за {} мс ({} строк/с)", written,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), String.format("%.0f", written / (elapsedNanos / 1e9)));
+        }
+    }
+
+    public double getRowsPerSecond() {
+        long nanos = totalFlushNanos.get();
+        return nanos == 0 ? 0 : totalRows.get() / (nanos / 1e9);
+    }
+
+    public long getTotalRows() {
+        return totalRows.get();
+    }
+
+    /**
+     * Пишет строки одной транзакцией и после фиксации переносит их в индексы в памяти.
+     *
+     * @return число записанных строк lemmas и indexes_table
+     */
+    private int write(List<IndexRow> batch, List<PageLength> lengths) {
+        Map<LemmaSlot, Long> deltas = collectFrequencies(batch);
+        Map<LemmaSlot, Integer> lemmaIds = new HashMap<>(deltas.size() * 2);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            lemmaIds.putAll(upsertLemmas(deltas));
+            insertIndexes(batch, lemmaIds);
+            updateLengths(lengths);
+        });
+        lemmaIds.forEach(LemmaSlot::markFlushed);
+        try {
+            lengths.forEach(page -> documentStatistics.put(page.pageId(), page.siteId(), page.length()));
+            for (IndexRow row : batch) {
+                LemmaSlot slot = row.slot();
+                invertedIndex.add(slot.getLemmaId(), slot.getSiteId(), slot.getLemma(), row.pageId(), row.rank());
+            }
+            addDocumentFrequencies(batch);
+            indexStore.addPostings(batch.stream()
+                    .map(row -> new IndexStore.Posting(row.slot().getSiteId(), row.slot().getLemma(),
+                            row.pageId(), row.rank()))
+                    .toList());
+        } finally {
+            // поиск, начатый до конца обновлений, посчитан на старом поколении и не попадет в кэш нового
+            indexGeneration.advance();
+        }
+        return deltas.size() + batch.size();
+    }
+
+    /**
+     * Пишет пачку по одной странице в транзакции. Страница, строки которой БД отвергает и отдельно,
+     * пропускается: повтор не поможет, а ее строки держали бы запись всех сайтов. При другой ошибке
+     * (например, недоступна БД) оставшиеся страницы возвращаются в буфер.
+     */
+    private int writeByPage(List<IndexRow> batch, List<PageLength> lengths) {
+        Map<Integer, PageLength> lengthByPage = new HashMap<>(lengths.size() * 2);
+        lengths.forEach(page -> lengthByPage.put(page.pageId(), page));
+        int written = 0;
+        int from = 0;
+        for (int i = 1; i <= batch.size(); i++) {
+            if (i < batch.size() && batch.get(i).pageId() == batch.get(from).pageId()) {
+                continue;
+            }
+            int pageId = batch.get(from).pageId();
+            PageLength length = lengthByPage.remove(pageId);
+            try {
+                written += write(batch.subList(from, i), length == null ? List.of() : List.of(length));
+            } catch (DataIntegrityViolationException e) {
+                log.error("Индексы страницы {} отвергнуты БД и пропущены: {}", pageId, e.getMessage());
+            } catch (RuntimeException e) {
+                if (length != null) {
+                    lengthByPage.put(pageId, length);
+                }
+                requeue(new ArrayList<>(batch.subList(from, batch.size())), new ArrayList<>(lengthByPage.values()));
+                throw e;
+            }
+            from = i;
+        }
+        return written;
+    }
+
+    private void flushQuietly() {
+        if (isBackingOff()) {
+            return;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Ошибка при пакетной записи лемм и индексов", e);
+        }
+    }
+
+    /**
+     * Пока пачка ждет повтора, буфер не разбирается; сверх {@code max-buffered-rows} строк поток обхода
+     * ждет, пока запись заберет буфер.
+     */
+    private void awaitCapacity() {
+        synchronized (bufferLock) {
+            while (buffer.size() >= settings.getMaxBufferedRows()) {
+                try {
+                    bufferLock.wait(settings.getFlushIntervalMs());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean isBackingOff() {
+        return failedAttempts > 0 && System.nanoTime() - retryAtNanos < 0;
+    }
+
+    /**
+     * Возвращает пачку перед строками, добавленными во время записи: строки страницы остаются подряд,
+     * а прирост частот лемм считается по строкам и уйдет в lemmas при повторе.
+     */
+    private void requeue(List<IndexRow> batch, List<PageLength> lengths) {
+        int failedRows = batch.size();
+        synchronized (bufferLock) {
+            batch.addAll(buffer);
+            lengths.addAll(lengthBuffer);
+            buffer = batch;
+            lengthBuffer = lengths;
+        }
+        int attempts = ++failedAttempts;
+        long delayMs = Math.min(MAX_RETRY_DELAY_MS, settings.getFlushIntervalMs() << Math.min(attempts, 10));
+        retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        log.warn("Пачка из {} индексов не записана (попытка {}), повтор через {} мс",
+                failedRows, attempts, delayMs);
+    }
+
+    /**
+     * Строки одной страницы попадают в буфер подряд, поэтому страницы выделяются по смене page id.
+     */
+    private void addDocumentFrequencies(List<IndexRow> batch) {
+        List<String> lemmas = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            IndexRow row = batch.get(i);
+            lemmas.add(row.slot().getLemma());
+            if (i + 1 == batch.size() || batch.get(i + 1).pageId() != row.pageId()) {
+                documentFrequencyTable.addPage(row.slot().getSiteId(), row.pageId(), lemmas);
+                lemmas.clear();
+            }
+        }
+    }
+
+    /**
+     * Прирост частоты леммы — число строк пачки с ней: у страницы одна строка на лемму, и каждая строка
+     * пишется один раз, при повторе или по страницам, либо пропускается вместе со своим приростом.
+     */
+    private Map<LemmaSlot, Long> collectFrequencies(List<IndexRow> rows) {
+        Map<LemmaSlot, Long> deltas = new TreeMap<>(SLOT_ORDER);
+        for (IndexRow row : rows) {
+            deltas.merge(row.slot(), 1L, Long::sum);
+        }
+        return deltas;
+    }
+
+    private Map<LemmaSlot, Integer> upsertLemmas(Map<LemmaSlot, Long> deltas) {
+        Map<LemmaSlot, Integer> lemmaIds = new HashMap<>(deltas.size() * 2);
+        List<LemmaSlot> slots = new ArrayList<>(deltas.keySet());
+        for (int from = 0; from < slots.size(); from += ROWS_PER_STATEMENT) {
+            List<LemmaSlot> chunk = slots.subList(from, Math.min(slots.size(), from + ROWS_PER_STATEMENT));
+            Map<String, LemmaSlot> byKey = new HashMap<>(chunk.size() * 2);
+            Object[] args = new Object[chunk.size() * 3];
+            int i = 0;
+            for (LemmaSlot slot : chunk) {
+                byKey.put(slot.getSiteId() + ":" + slot.getLemma(), slot);
+                args[i++] = slot.getSiteId();
+                args[i++] = slot.getLemma();
+                args[i++] = deltas.get(slot);
+            }
+            String sql = UPSERT_LEMMAS_PREFIX + placeholders(chunk.size(), 3) + UPSERT_LEMMAS_SUFFIX;
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs ->
+                    lemmaIds.put(byKey.get(rs.getInt("site_id") + ":" + rs.getString("lemma")), rs.getInt("id")), args);
+        }
+        return lemmaIds;
+    }
+
+    private void insertIndexes(List<IndexRow> rows, Map<LemmaSlot, Integer> lemmaIds) {
+        for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+            List<IndexRow> chunk = rows.subList(from, Math.min(rows.size(), from + ROWS_PER_STATEMENT));
+            Object[] args = new Object[chunk.size() * 3];
+            int i = 0;
+            for (IndexRow row : chunk) {
+                Integer lemmaId = lemmaIds.get(row.slot());
+                args[i++] = row.pageId();
+                args[i++] = lemmaId != null ? lemmaId : row.slot().getLemmaId();
+                args[i++] = (float) row.rank();
+            }
+            jdbcTemplate.update(INSERT_INDEXES_PREFIX + placeholders(chunk.size(), 3), args);
+        }
+    }
+
+    private void updateLengths(List<PageLength> lengths) {
+        for (int from = 0; from < lengths.size(); from += ROWS_PER_STATEMENT) {
+            List<PageLength> chunk = lengths.subList(from, Math.min(lengths.size(), from + ROWS_PER_STATEMENT));
+            Object[] args = new Object[chunk.size() * 2];
+            int i = 0;
+            for (PageLength page : chunk) {
+                args[i++] = page.pageId();
+                args[i++] = page.length();
+            }
+            jdbcTemplate.update(UPDATE_LENGTHS_PREFIX + placeholders(chunk.size(), 2) + UPDATE_LENGTHS_SUFFIX, args);
+        }
+    }
+
+    private static String placeholders(int rows, int columns) {
+        String row = "(" + String.join(", ", Collections.nCopies(columns, "?")) + ")";
+        return String.join(", ", Collections.nCopies(rows, row));
+    }
+
+    private static final Comparator<LemmaSlot> SLOT_ORDER =
+            Comparator.comparingInt(LemmaSlot::getSiteId).thenComparing(LemmaSlot::getLemma);
+
+    private record IndexRow(int pageId, LemmaSlot slot, int rank) {
+    }
+
+    private record PageLength(int siteId, int pageId, int length) {
+    }
+}
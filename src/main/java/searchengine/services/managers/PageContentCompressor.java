@@ -0,0 +1,90 @@
+package searchengine.services.managers;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import searchengine.config.ContentStorageSettings;
+import searchengine.dto.statistics.StorageStatistics;
+import searchengine.dto.statistics.TableStorage;
+import searchengine.utility.ContentCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Переносит HTML страниц, сохраненных без сжатия, из page.content в page.content_compressed пачками по id.
+ * Запускается после старта приложения, если включены сжатие и {@code persistence.content.compress-existing},
+ * и пишет в лог размеры таблицы page до и после. Место на диске PostgreSQL освобождает после VACUUM.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PageContentCompressor {
+
+    private static final String SELECT_UNCOMPRESSED =
+            "SELECT id, content FROM sites_parsing.page WHERE content IS NOT NULL AND id > ? ORDER BY id LIMIT ?";
+    /**
+     * Страница, перезаписанная во время переноса, уже хранится сжатой, и content у нее пуст.
+     */
+    private static final String UPDATE_COMPRESSED =
+            "UPDATE sites_parsing.page SET content = NULL, content_compressed = ? WHERE id = ? AND content IS NOT NULL";
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final ContentStorageSettings settings;
+    private final JdbcTemplate jdbcTemplate;
+    private final RepositoryManager repositoryManager;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void compressInBackground() {
+        if (!settings.isCompressed() || !settings.isCompressExisting()) {
+            return;
+        }
+        Thread compressor = new Thread(this::compressExisting, "page-content-compressor");
+        compressor.setDaemon(true);
+        compressor.start();
+    }
+
+    public void compressExisting() {
+        long startedAt = System.nanoTime();
+        try {
+            logSizes("до сжатия");
+            int lastId = 0;
+            long pages = 0;
+            while (true) {
+                List<Object[]> batch = new ArrayList<>(settings.getMigrationBatchSize());
+                jdbcTemplate.query(SELECT_UNCOMPRESSED, (RowCallbackHandler) rs -> batch.add(new Object[]{
+                        ContentCodec.deflate(rs.getString("content"), settings.getLevel()), rs.getInt("id")}),
+                        lastId, settings.getMigrationBatchSize());
+                if (batch.isEmpty()) {
+                    break;
+                }
+                jdbcTemplate.batchUpdate(UPDATE_COMPRESSED, batch);
+                lastId = (int) batch.get(batch.size() - 1)[1];
+                pages += batch.size();
+            }
+            log.info("Сжато содержимое {} страниц за {} мс", pages,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+            logSizes("после сжатия");
+        } catch (Exception e) {
+            log.error("Не удалось сжать содержимое страниц", e);
+        }
+    }
+
+    private void logSizes(String stage) {
+        StorageStatistics content = repositoryManager.getPageContentSizes();
+        TableStorage page = repositoryManager.getTableSizes().stream()
+                .filter(table -> "page".equals(table.getName()))
+                .findFirst()
+                .orElseGet(TableStorage::new);
+        log.info("Таблица page {}: всего {} МБ (TOAST {} МБ); HTML без сжатия {} страниц, {} МБ; " +
+                        "сжатый HTML {} страниц, {} МБ; текст {} МБ", stage, page.getTotalBytes() / MEGABYTE,
+                page.getToastBytes() / MEGABYTE, content.getHtmlPages(), content.getHtmlBytes() / MEGABYTE,
+                content.getCompressedPages(), content.getCompressedBytes() / MEGABYTE,
+                content.getPlainTextBytes() / MEGABYTE);
+    }
+}
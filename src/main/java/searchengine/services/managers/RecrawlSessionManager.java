@@ -0,0 +1,39 @@
+package searchengine.services.managers;
+
+import org.springframework.stereotype.Component;
+import searchengine.entity.SiteEntity;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Страницы, встреченные при инкрементальном обходе сайта. Страницы сайта,
+ * не попавшие в этот набор к концу обхода, считаются исчезнувшими.
+ */
+@Component
+public class RecrawlSessionManager {
+
+    private final Map<Integer, Set<Integer>> seenPages = new ConcurrentHashMap<>();
+
+    public void begin(SiteEntity siteEntity) {
+        seenPages.put(siteEntity.getId(), ConcurrentHashMap.newKeySet());
+    }
+
+    public boolean isActive(SiteEntity siteEntity) {
+        return seenPages.containsKey(siteEntity.getId());
+    }
+
+    public void markSeen(SiteEntity siteEntity, int pageId) {
+        Set<Integer> pages = seenPages.get(siteEntity.getId());
+        if (pages != null) {
+            pages.add(pageId);
+        }
+    }
+
+    public Set<Integer> finish(SiteEntity siteEntity) {
+        Set<Integer> pages = seenPages.remove(siteEntity.getId());
+        return pages != null ? pages : Collections.emptySet();
+    }
+}
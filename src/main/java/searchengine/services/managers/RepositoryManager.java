@@ -3,22 +3,42 @@ package searchengine.services.managers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.nodes.Document;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import searchengine.config.ContentStorageSettings;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
+import searchengine.dto.indexing.PageFetchResult;
+import searchengine.dto.indexing.PageText;
+import searchengine.dto.statistics.StorageStatistics;
+import searchengine.dto.statistics.TableStorage;
 import searchengine.entity.*;
 import searchengine.exceptions.SiteExceptions;
 import searchengine.repository.IndexRepository;
 import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
+import searchengine.services.search.SearchDeadline;
+import searchengine.services.search.index.InvertedIndex;
+import searchengine.services.search.index.SearchHits;
+import searchengine.services.store.IndexStore;
+import searchengine.services.search.scoring.DocumentFrequencyTable;
+import searchengine.services.search.scoring.DocumentStatistics;
+import searchengine.utility.ContentCodec;
+import searchengine.utility.UrlFingerprint;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 
 @Slf4j
 @Service
@@ -31,8 +51,26 @@ public class RepositoryManager {
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final InvertedIndex invertedIndex;
+    private final DocumentStatistics documentStatistics;
+    private final DocumentFrequencyTable documentFrequencyTable;
+    private final IndexGeneration indexGeneration;
+    private final JdbcTemplate jdbcTemplate;
+    private final IndexStore indexStore;
+    private final ContentStorageSettings contentStorageSettings;
 
-    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    private static final int DELETE_BATCH_SIZE = 1000;
+    private static final String SELECT_TABLE_SIZES = "SELECT c.relname AS name, c.reltuples::bigint AS row_estimate, " +
+            "pg_total_relation_size(c.oid) AS total_bytes, pg_relation_size(c.oid) AS table_bytes, " +
+            "COALESCE(pg_total_relation_size(NULLIF(c.reltoastrelid, 0)), 0) AS toast_bytes, " +
+            "pg_indexes_size(c.oid) AS index_bytes " +
+            "FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+            "WHERE n.nspname = 'sites_parsing' AND c.relkind = 'r' ORDER BY total_bytes DESC";
+    private static final String SELECT_CONTENT_SIZES = "SELECT COUNT(content) AS html_pages, " +
+            "COALESCE(SUM(pg_column_size(content)), 0) AS html_bytes, " +
+            "COUNT(content_compressed) AS compressed_pages, " +
+            "COALESCE(SUM(pg_column_size(content_compressed)), 0) AS compressed_bytes, " +
+            "COALESCE(SUM(pg_column_size(plain_text)), 0) AS plain_text_bytes FROM sites_parsing.page";
 
     public List<SiteEntity> getListSiteEntity() {
         List<Site> sites = sitesList.getSites();
@@ -49,12 +87,39 @@ public class RepositoryManager {
         return siteEntityList;
     }
 
+    public List<SiteEntity> getOrCreateSiteEntities() {
+        List<SiteEntity> siteEntityList = new ArrayList<>();
+        for (Site site : sitesList.getSites()) {
+            siteEntityList.add(getOrCreateSiteEntity(site));
+        }
+        return siteEntityList;
+    }
+
+    public SiteEntity getOrCreateSiteEntity(Site site) {
+        SiteEntity siteEntity = siteRepository.findByUrl(site.getUrl());
+        if (siteEntity == null) {
+            siteEntity = new SiteEntity();
+            siteEntity.setUrl(site.getUrl());
+        }
+        siteEntity.setName(site.getName());
+        siteEntity.setStatusTime(LocalDateTime.now());
+        siteEntity.setStatus(Status.INDEXING);
+        return siteRepository.save(siteEntity);
+    }
+
+    public Optional<Site> findConfiguredSite(String url) {
+        String normalized = UrlFingerprint.normalize(url);
+        return sitesList.getSites().stream()
+                .filter(site -> UrlFingerprint.normalize(site.getUrl()).equals(normalized))
+                .findFirst();
+    }
+
     public List<SiteEntity> getAllSitesFromRepository(){
         return siteRepository.findAll();
     }
 
     @Transactional
-    public PageEntity processPage(String url, Document document, SiteEntity siteEntity) {
+    public PageEntity processPage(String url, Document document, PageText pageText, SiteEntity siteEntity) {
         if (document == null) {
             log.error("Ошибка: документ для URL {} не загружен", url);
             throw new SiteExceptions("Ошибка загрузки страницы: " + url);
@@ -63,43 +128,110 @@ public class RepositoryManager {
         PageEntity pageEntity = new PageEntity();
         pageEntity.setPath(url);
         pageEntity.setSite(siteEntity);
-        pageEntity.setContent(document.html());
+        setContent(pageEntity, document.html());
         pageEntity.setCode(200);
+        setPageText(pageEntity, pageText);
         pageRepository.save(pageEntity);
+        afterCommit(indexGeneration::advance);
         return pageEntity;
     }
 
     @Transactional
-    public LemmaEntity processAndSaveLemma(SiteEntity siteEntity, String lemma) {
-        String key = siteEntity.getId() + ":" + lemma;
-        locks.computeIfAbsent(key, k -> new Object());
-
-        synchronized (locks.get(key)) {
-            try {
-                LemmaEntity lemmaEntity = lemmaRepository.findBySite_IdAndLemma(siteEntity.getId(), lemma)
-                        .orElseGet(() -> {
-                            LemmaEntity newLemma = new LemmaEntity();
-                            newLemma.setSite(siteEntity);
-                            newLemma.setLemma(lemma);
-                            newLemma.setFrequency(0);
-                            return lemmaRepository.save(newLemma);
-                        });
-
-                lemmaRepository.incrementFrequency(siteEntity.getId(), lemma);
-                return lemmaEntity;
-            } finally {
-                locks.remove(key);
-            }
+    public PageEntity processPage(String url, PageFetchResult fetch, PageText pageText, SiteEntity siteEntity) {
+        if (fetch.getDocument() == null) {
+            log.error("Ошибка: документ для URL {} не загружен", url);
+            throw new SiteExceptions("Ошибка загрузки страницы: " + url);
+        }
+
+        PageEntity pageEntity = new PageEntity();
+        pageEntity.setPath(url);
+        pageEntity.setSite(siteEntity);
+        setContent(pageEntity, fetch.getDocument().html());
+        pageEntity.setCode(fetch.getStatusCode());
+        pageEntity.setEtag(fetch.getEtag());
+        pageEntity.setLastModified(fetch.getLastModified());
+        pageEntity.setContentHash(fetch.getContentHash());
+        setPageText(pageEntity, pageText);
+        pageRepository.save(pageEntity);
+        afterCommit(indexGeneration::advance);
+        return pageEntity;
+    }
+
+    /**
+     * HTML хранится сжатым в content_compressed или как есть в content, в зависимости от
+     * {@code persistence.content.mode}; вторая колонка очищается.
+     */
+    private void setContent(PageEntity pageEntity, String html) {
+        byte[] compressed = compressContent(html);
+        pageEntity.setContent(compressed == null ? html : null);
+        pageEntity.setContentCompressed(compressed);
+    }
+
+    private byte[] compressContent(String html) {
+        return contentStorageSettings.isCompressed()
+                ? ContentCodec.deflate(html, contentStorageSettings.getLevel())
+                : null;
+    }
+
+    /**
+     * HTML страницы; сжатое содержимое распаковывается только здесь, когда разметка действительно нужна.
+     */
+    public String getPageHtml(PageEntity pageEntity) {
+        return html(pageEntity.getContent(), pageEntity.getContentCompressed());
+    }
+
+    private static String html(String content, byte[] contentCompressed) {
+        if (contentCompressed != null) {
+            return ContentCodec.inflate(contentCompressed);
         }
+        return content != null ? content : "";
+    }
+
+    private static void setPageText(PageEntity pageEntity, PageText pageText) {
+        pageEntity.setTitle(pageText.getTitle());
+        pageEntity.setPlainText(pageText.getText());
+        pageEntity.setTokenMap(pageText.getTokenMap());
+    }
+
+    public Optional<PageEntity> findPage(SiteEntity siteEntity, String uri) {
+        return pageRepository.findBySiteAndPath(siteEntity.getId(), uri);
+    }
+
+    @Transactional
+    public void updatePageValidators(PageEntity pageEntity, PageFetchResult fetch) {
+        pageRepository.updateValidators(pageEntity.getId(), fetch.getEtag(), fetch.getLastModified());
+    }
+
+    @Transactional
+    public void replacePageContent(PageEntity pageEntity, PageFetchResult fetch, PageText pageText) {
+        unindexPages(List.of(pageEntity.getId()));
+        lemmaRepository.decrementFrequencyByPage(pageEntity.getId());
+        indexRepository.deleteAllByPage(pageEntity.getId());
+        String html = fetch.getDocument().html();
+        byte[] compressed = compressContent(html);
+        pageRepository.updateContent(pageEntity.getId(), fetch.getStatusCode(), compressed == null ? html : null,
+                compressed, fetch.getEtag(), fetch.getLastModified(), fetch.getContentHash(),
+                pageText.getTitle(), pageText.getText(), pageText.getTokenMap());
+        afterCommit(indexGeneration::advance);
     }
 
     @Transactional
-    public void saveIndex(PageEntity pageEntity, LemmaEntity lemmaEntity, float freq) {
-        IndexEntity indexEntity = new IndexEntity();
-        indexEntity.setRank(freq);
-        indexEntity.setLemma(lemmaEntity);
-        indexEntity.setPage(pageEntity);
-        indexRepository.save(indexEntity);
+    public int deletePagesExcept(SiteEntity siteEntity, Set<Integer> keepPageIds) {
+        List<Integer> stalePageIds = pageRepository.findIdsBySiteId(siteEntity.getId()).stream()
+                .filter(pageId -> !keepPageIds.contains(pageId))
+                .toList();
+        for (int from = 0; from < stalePageIds.size(); from += DELETE_BATCH_SIZE) {
+            List<Integer> chunk = stalePageIds.subList(from, Math.min(stalePageIds.size(), from + DELETE_BATCH_SIZE));
+            unindexPages(chunk);
+            lemmaRepository.decrementFrequencyByPages(chunk);
+            indexRepository.deleteAllByPages(chunk);
+            pageRepository.deletePagesByIds(chunk);
+        }
+        afterCommit(() -> {
+            documentStatistics.remove(siteEntity.getId(), stalePageIds);
+            indexGeneration.advance();
+        });
+        return stalePageIds.size();
     }
 
     public Optional<SiteEntity> findSiteByUrl(String url) {
@@ -115,32 +247,148 @@ public class RepositoryManager {
 
         if (pageEntityOpt.isPresent()) {
             PageEntity pageEntity = pageEntityOpt.get();
+            unindexPages(List.of(pageEntity.getId()));
+            lemmaRepository.decrementFrequencyByPage(pageEntity.getId());
             indexRepository.deleteAllByPage(pageEntity.getId());
-            List<LemmaEntity> lemmasToDecrement = lemmaRepository.findUnusedLemmasBySite(pageEntity.getId());
-            lemmasToDecrement.forEach(lemma -> {
-                lemma.setFrequency(lemma.getFrequency() - 1);
-            });
-            lemmaRepository.saveAll(lemmasToDecrement);
             pageRepository.delete(pageEntity);
+            afterCommit(() -> {
+                documentStatistics.remove(siteEntity.getId(), List.of(pageEntity.getId()));
+                indexGeneration.advance();
+            });
         } else {
             log.warn("Страница с URL: {} не найдена", url);
         }
     }
 
+    @Transactional
+    public void deleteSiteData(SiteEntity siteEntity) {
+        indexRepository.deleteAllBySiteId(siteEntity.getId());
+        lemmaRepository.deleteAllBySiteId(siteEntity.getId());
+        pageRepository.deleteAllBySiteId(siteEntity.getId());
+        afterCommit(() -> {
+            invertedIndex.removeSite(siteEntity.getId());
+            indexStore.removeSite(siteEntity.getId());
+            documentStatistics.removeSite(siteEntity.getId());
+            documentFrequencyTable.removeSite(siteEntity.getId());
+            indexGeneration.advance();
+        });
+    }
+
     @Transactional
     public void truncateAllSiteAndPages() {
         indexRepository.truncateAllIndexes();
         lemmaRepository.truncateAllLemmas();
         pageRepository.truncateAllPages();
         siteRepository.truncateAllSites();
+        afterCommit(() -> {
+            invertedIndex.clear();
+            indexStore.clear();
+            documentStatistics.clear();
+            documentFrequencyTable.clear();
+            indexGeneration.advance();
+        });
+    }
+
+    /**
+     * Пары (лемма, страница) читаются до удаления строк индекса, а из индекса в памяти и таблицы
+     * документных частот удаляются после коммита.
+     */
+    private void unindexPages(List<Integer> pageIds) {
+        Map<Integer, List<Integer>> pageIdsByLemmaId = new HashMap<>();
+        Map<Integer, List<String>> lemmasByPageId = new HashMap<>();
+        Map<Integer, Integer> siteIdByPageId = new HashMap<>();
+        for (IndexRepository.IndexKey key : indexRepository.findKeysByPages(pageIds)) {
+            pageIdsByLemmaId.computeIfAbsent(key.getLemmaId(), id -> new ArrayList<>()).add(key.getPageId());
+            lemmasByPageId.computeIfAbsent(key.getPageId(), id -> new ArrayList<>()).add(key.getLemma());
+            siteIdByPageId.put(key.getPageId(), key.getSiteId());
+        }
+        afterCommit(() -> {
+            invertedIndex.removePages(pageIdsByLemmaId);
+            indexStore.removePages(pageIds);
+            lemmasByPageId.forEach((pageId, lemmas) ->
+                    documentFrequencyTable.removePage(siteIdByPageId.get(pageId), pageId, lemmas));
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * k лучших страниц, содержащих все леммы запроса, из {@link IndexStore}.
+     *
+     * @param siteEntity сайт, которым ограничен поиск, или null для поиска по всем сайтам
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public SearchHits findTopPages(List<String> lemmas, SiteEntity siteEntity, IndexStore.PageScoring scoring,
+                                   int k, SearchDeadline deadline) {
+        return indexStore.findTopPages(lemmas, siteEntity == null ? null : siteEntity.getId(), scoring, k, deadline);
+    }
+
+    /**
+     * Число страниц с леммой: по сайту или суммарно по всем сайтам.
+     */
+    public Map<String, Integer> getDocumentFrequencies(Collection<String> lemmas, SiteEntity siteEntity) {
+        return indexStore.getDocumentFrequencies(lemmas, siteEntity == null ? null : siteEntity.getId());
+    }
+
+    /**
+     * Карты позиций слов ({@link searchengine.utility.TokenMap}) страниц-кандидатов.
+     */
+    public List<PageRepository.PageTokenMap> findTokenMaps(Collection<Integer> pageIds) {
+        return pageRepository.findTokenMaps(pageIds);
+    }
+
+    public List<PageRepository.PageView> findPageViews(Collection<Integer> pageIds) {
+        return pageRepository.findPageViews(pageIds);
+    }
+
+    /**
+     * Размеры таблиц схемы sites_parsing: сама таблица, вынесенные в TOAST длинные значения и индексы.
+     */
+    @Transactional(readOnly = true)
+    public List<TableStorage> getTableSizes() {
+        return jdbcTemplate.query(SELECT_TABLE_SIZES, (rs, rowNum) -> {
+            TableStorage table = new TableStorage();
+            table.setName(rs.getString("name"));
+            table.setRows(rs.getLong("row_estimate"));
+            table.setTotalBytes(rs.getLong("total_bytes"));
+            table.setTableBytes(rs.getLong("table_bytes"));
+            table.setToastBytes(rs.getLong("toast_bytes"));
+            table.setIndexBytes(rs.getLong("index_bytes"));
+            return table;
+        });
     }
 
-    public Float getAbsoluteRelevance(PageEntity page, List<String> lemmas){
-        return indexRepository.calculatePageRelevance(page, lemmas);
+    /**
+     * Объем содержимого страниц по колонкам, как оно лежит на диске (pg_column_size, с учетом сжатия TOAST).
+     */
+    @Transactional(readOnly = true)
+    public StorageStatistics getPageContentSizes() {
+        return jdbcTemplate.queryForObject(SELECT_CONTENT_SIZES, (rs, rowNum) -> {
+            StorageStatistics statistics = new StorageStatistics();
+            statistics.setContentMode(contentStorageSettings.getMode());
+            statistics.setHtmlPages(rs.getLong("html_pages"));
+            statistics.setHtmlBytes(rs.getLong("html_bytes"));
+            statistics.setCompressedPages(rs.getLong("compressed_pages"));
+            statistics.setCompressedBytes(rs.getLong("compressed_bytes"));
+            statistics.setPlainTextBytes(rs.getLong("plain_text_bytes"));
+            return statistics;
+        });
     }
 
-    public List<PageEntity> findTopPages(List<String> lemmas, int lemmaCount, int maxResults) {
-        return pageRepository.findPagesMatchingLemmas(lemmas, lemmaCount, maxResults);
+    public Optional<String> findPageContent(int pageId) {
+        return pageRepository.findContentById(pageId)
+                .map(page -> html(page.getContent(), page.getContentCompressed()));
     }
 
     public SiteEntity getSiteForSearchService(String url){
@@ -159,7 +407,7 @@ public class RepositoryManager {
         return pageRepository.countTotalPages();
     }
 
-    public int getLemmaFrequency(String lemma) {
-        return lemmaRepository.countLemmaFrequency(lemma);
+    public Optional<SiteEntity> findIndexedSite(String url) {
+        return findConfiguredSite(url).map(site -> siteRepository.findByUrl(site.getUrl()));
     }
 }
@@ -3,6 +3,7 @@ package searchengine.services.managers;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import searchengine.dto.indexing.SiteJobStatus;
 import searchengine.entity.PageEntity;
 import searchengine.entity.SiteEntity;
 import searchengine.entity.Status;
@@ -13,12 +14,14 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @RequiredArgsConstructor
 public class StatusManager {
 
     private final Map<Integer, Boolean> siteErrorMap = new ConcurrentHashMap<>();
+    private final Map<Integer, SiteProgress> siteProgressMap = new ConcurrentHashMap<>();
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
 
@@ -27,6 +30,37 @@ public class StatusManager {
         siteEntity.setStatusTime(LocalDateTime.now());
         siteRepository.save(siteEntity);
         siteErrorMap.put(siteEntity.getId(), false);
+        siteProgressMap.put(siteEntity.getId(), new SiteProgress(siteEntity.getUrl()));
+    }
+
+    public void pageIndexed(SiteEntity siteEntity) {
+        SiteProgress progress = siteProgressMap.get(siteEntity.getId());
+        if (progress != null) {
+            progress.pages.incrementAndGet();
+        }
+    }
+
+    public void requestStop(SiteEntity siteEntity) {
+        SiteProgress progress = siteProgressMap.get(siteEntity.getId());
+        if (progress != null) {
+            progress.stopRequested = true;
+        }
+    }
+
+    public boolean isStopRequested(SiteEntity siteEntity) {
+        SiteProgress progress = siteProgressMap.get(siteEntity.getId());
+        return progress != null && progress.stopRequested;
+    }
+
+    public void finishSiteProgress(SiteEntity siteEntity) {
+        SiteProgress progress = siteProgressMap.get(siteEntity.getId());
+        if (progress != null) {
+            progress.finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    public List<SiteJobStatus> getSiteProgress() {
+        return siteProgressMap.values().stream().map(SiteProgress::toStatus).toList();
     }
 
     @Transactional
@@ -77,10 +111,33 @@ public class StatusManager {
     }
 
     public boolean hasSiteErrors(SiteEntity siteEntity) {
-        return siteErrorMap.get(siteEntity.getId()) == true;
+        return Boolean.TRUE.equals(siteErrorMap.get(siteEntity.getId()));
     }
 
     public void clearSiteState(int siteId) {
         siteErrorMap.remove(siteId);
     }
+
+    private static class SiteProgress {
+        private final String url;
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicInteger pages = new AtomicInteger();
+        private volatile long finishedAt;
+        private volatile boolean stopRequested;
+
+        private SiteProgress(String url) {
+            this.url = url;
+        }
+
+        private SiteJobStatus toStatus() {
+            SiteJobStatus status = new SiteJobStatus();
+            status.setUrl(url);
+            status.setRunning(finishedAt == 0);
+            status.setStopRequested(stopRequested);
+            status.setPagesIndexed(pages.get());
+            status.setStartTime(startedAt);
+            status.setFinishTime(finishedAt);
+            return status;
+        }
+    }
 }
@@ -1,30 +1,109 @@
 package searchengine.services.managers;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import searchengine.entity.SiteEntity;
+import searchengine.utility.LongHashSet;
+import searchengine.utility.UrlFingerprint;
 
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Посещенные URL каждого сайта на время обхода: 64-битные отпечатки в {@link #STRIPES} множествах со своими
+ * блокировками. Множества начинаются с минимального размера и растут по мере обхода, так что маленький сайт
+ * не занимает память, рассчитанную на большой. Число адресов и занятая память видны в /api/statistics.
+ */
+@Slf4j
 @Service
 public class VisitedUrlsManager {
 
-    private final Set<String> visitedUrls = ConcurrentHashMap.newKeySet();
+    private static final int STRIPES = 16;
+    private static final int STRIPE_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(STRIPES);
 
-    public boolean isUrlVisited(String url) {
-        return !visitedUrls.add(url);
+    private final Map<Integer, SiteUrls> visitedUrls = new ConcurrentHashMap<>();
+
+    public boolean isUrlVisited(SiteEntity siteEntity, String url) {
+        return !visitedUrls.computeIfAbsent(siteEntity.getId(), id -> new SiteUrls())
+                .add(UrlFingerprint.of(url));
     }
 
-    public void clearUrls(String siteUrl) {
-        visitedUrls.removeIf(url -> url.startsWith(siteUrl));
+    public void clearUrls(SiteEntity siteEntity) {
+        SiteUrls removed = visitedUrls.remove(siteEntity.getId());
+        if (removed != null) {
+            log.info("Посещенные URL сайта {} очищены: {} адресов, {} КБ",
+                    siteEntity.getUrl(), removed.size(), removed.memoryFootprintBytes() / 1024);
+        }
     }
 
     public void clearAllSitesUrls(List<SiteEntity> siteEntityList){
-        siteEntityList.stream().forEach(c -> clearUrls(c.getUrl()));
+        siteEntityList.forEach(this::clearUrls);
+    }
+
+    public boolean isProcessingCompleted(SiteEntity siteEntity) {
+        return !visitedUrls.containsKey(siteEntity.getId());
+    }
+
+    public long getVisitedCount(SiteEntity siteEntity) {
+        SiteUrls urls = visitedUrls.get(siteEntity.getId());
+        return urls == null ? 0 : urls.size();
+    }
+
+    public long getMemoryFootprintBytes(SiteEntity siteEntity) {
+        SiteUrls urls = visitedUrls.get(siteEntity.getId());
+        return urls == null ? 0 : urls.memoryFootprintBytes();
+    }
+
+    public long getTotalMemoryFootprintBytes() {
+        return visitedUrls.values().stream().mapToLong(SiteUrls::memoryFootprintBytes).sum();
+    }
+
+    private static class SiteUrls {
+
+        private final Stripe[] stripes = new Stripe[STRIPES];
+
+        private SiteUrls() {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        private boolean add(long fingerprint) {
+            return stripes[(int) (fingerprint >>> STRIPE_SHIFT)].add(fingerprint);
+        }
+
+        private long size() {
+            long size = 0;
+            for (Stripe stripe : stripes) {
+                size += stripe.size();
+            }
+            return size;
+        }
+
+        private long memoryFootprintBytes() {
+            long bytes = 0;
+            for (Stripe stripe : stripes) {
+                bytes += stripe.memoryFootprintBytes();
+            }
+            return bytes;
+        }
     }
 
-    public boolean isProcessingCompleted(String siteUrl) {
-        return visitedUrls.stream().noneMatch(url -> url.startsWith(siteUrl));
+    private static class Stripe {
+
+        private final LongHashSet fingerprints = new LongHashSet(0);
+
+        private synchronized boolean add(long fingerprint) {
+            return fingerprints.add(fingerprint);
+        }
+
+        private synchronized int size() {
+            return fingerprints.size();
+        }
+
+        private synchronized long memoryFootprintBytes() {
+            return fingerprints.memoryFootprintBytes();
+        }
     }
 }
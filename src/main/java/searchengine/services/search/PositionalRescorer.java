@@ -0,0 +1,281 @@
+package searchengine.services.search;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.dto.statistics.CacheStatistics;
+import searchengine.repository.PageRepository;
+import searchengine.services.managers.IndexGeneration;
+import searchengine.services.managers.RepositoryManager;
+import searchengine.services.search.index.ScoredPage;
+import searchengine.services.search.index.SearchHits;
+import searchengine.services.search.index.TopKCollector;
+import searchengine.utility.ConcurrentLruCache;
+import searchengine.utility.TokenMap;
+
+import java.util.*;
+
+/**
+ * Проверка фраз и бонус за близость слов по позициям из карты слов страницы (page.token_map), которая
+ * хранится для сниппетов. Позиции нужны только страницам, уже прошедшим пересечение по всем леммам:
+ * для фраз — всем кандидатам, для бонуса близости — первым {@code rerankDepth} страницам выдачи.
+ * Разобранные позиции лемм запроса кэшируются до смены поколения индекса, так что повторяющиеся
+ * страницы не читаются из БД заново. Страницы без карты слов (проиндексированные до ее появления)
+ * фразу проходят и бонуса не получают.
+ */
+@Component
+public class PositionalRescorer {
+
+    private static final int POSITIONS_BATCH_SIZE = 1000;
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final RepositoryManager repositoryManager;
+    private final SearchSettings searchSettings;
+    private final IndexGeneration indexGeneration;
+    private final ConcurrentLruCache<PageLemma, CachedPositions> cache;
+
+    public PositionalRescorer(RepositoryManager repositoryManager, SearchSettings searchSettings,
+                              IndexGeneration indexGeneration) {
+        this.repositoryManager = repositoryManager;
+        this.searchSettings = searchSettings;
+        this.indexGeneration = indexGeneration;
+        this.cache = new ConcurrentLruCache<>(searchSettings.getPositions().getCacheEntries());
+    }
+
+    public boolean applies(SearchQuery query) {
+        return searchSettings.getPositions().isEnabled() && (query.hasPhrases() || query.words().size() > 1);
+    }
+
+    /**
+     * Сколько кандидатов нужно получить из индекса, чтобы после проверки позиций осталось k лучших.
+     */
+    public int candidateCount(SearchQuery query, int k) {
+        SearchSettings.Positions settings = searchSettings.getPositions();
+        return Math.max(k, query.hasPhrases() ? settings.getMaxPhraseCandidates() : settings.getRerankDepth());
+    }
+
+    /**
+     * Когда срок запроса истекает, непроверенные кандидаты фразового запроса отбрасываются,
+     * а остальным бонус близости не начисляется.
+     *
+     * @param candidates страницы, содержащие все леммы запроса, по убыванию score
+     */
+    public SearchHits rescore(SearchHits candidates, SearchQuery query, int k, SearchDeadline deadline) {
+        List<ScoredPage> pages = candidates.pages();
+        boolean phrases = query.hasPhrases();
+        int checked = phrases ? pages.size() : Math.min(pages.size(), searchSettings.getPositions().getRerankDepth());
+        List<String> lemmas = query.matchingLemmas(query.lemmas()).stream().distinct().toList();
+
+        TopKCollector collector = new TopKCollector(k);
+        int verified = 0;
+        while (verified < checked && !deadline.shouldStop()) {
+            List<ScoredPage> chunk = pages.subList(verified, Math.min(checked, verified + POSITIONS_BATCH_SIZE));
+            Map<Integer, PagePositions> positions = loadPositions(chunk, lemmas);
+            for (ScoredPage page : chunk) {
+                PagePositions pagePositions = positions.getOrDefault(page.pageId(), PagePositions.UNKNOWN);
+                if (phrases && !matchesPhrases(query, pagePositions)) {
+                    continue;
+                }
+                collector.countHit();
+                collector.offer(page.pageId(), page.siteId(), page.score() * proximityBoost(query, pagePositions));
+            }
+            verified += chunk.size();
+        }
+        if (phrases) {
+            return collector.hits();
+        }
+        for (ScoredPage page : pages.subList(verified, pages.size())) {
+            collector.offer(page.pageId(), page.siteId(), page.score());
+        }
+        return new SearchHits(collector.hits().pages(), candidates.totalHits());
+    }
+
+    public CacheStatistics getStatistics() {
+        return cache.statistics("term-positions");
+    }
+
+    /**
+     * Позиции из кэша, а для страниц, которых там нет, — из карт слов одним запросом. Удаленные страницы
+     * считаются страницами без позиций и в кэш не попадают.
+     */
+    private Map<Integer, PagePositions> loadPositions(List<ScoredPage> pages, List<String> lemmas) {
+        long generation = indexGeneration.current();
+        Map<Integer, PagePositions> result = new HashMap<>(pages.size() * 2);
+        List<Integer> missing = new ArrayList<>();
+        for (ScoredPage page : pages) {
+            PagePositions positions = new PagePositions(true);
+            for (String lemma : lemmas) {
+                CachedPositions cached = cache.getIfValid(new PageLemma(page.pageId(), lemma),
+                        entry -> entry.generation() == generation);
+                if (cached == null) {
+                    positions = null;
+                    break;
+                }
+                if (cached.positions() == null) {
+                    positions.complete = false;
+                } else {
+                    positions.byLemma.put(lemma, cached.positions());
+                }
+            }
+            if (positions == null) {
+                missing.add(page.pageId());
+            } else {
+                result.put(page.pageId(), positions);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        Set<String> wanted = new HashSet<>(lemmas);
+        for (PageRepository.PageTokenMap page : repositoryManager.findTokenMaps(missing)) {
+            PagePositions positions = new PagePositions(page.getTokenMap() != null);
+            if (positions.complete) {
+                positions.byLemma.putAll(TokenMap.positions(page.getTokenMap(), wanted));
+            }
+            for (String lemma : lemmas) {
+                int[] found = positions.complete ? positions.byLemma.getOrDefault(lemma, NO_POSITIONS) : null;
+                cache.put(new PageLemma(page.getId(), lemma), new CachedPositions(found, generation));
+            }
+            result.put(page.getId(), positions);
+        }
+        return result;
+    }
+
+    private static boolean matchesPhrases(SearchQuery query, PagePositions page) {
+        if (!page.complete) {
+            return true;
+        }
+        for (SearchQuery.Phrase phrase : query.phrases()) {
+            if (!matchesPhrase(query, phrase.words(), page)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesPhrase(SearchQuery query, List<List<String>> words, PagePositions page) {
+        int[][] positions = new int[words.size()][];
+        for (int i = 0; i < words.size(); i++) {
+            positions[i] = page.positionsOf(query.matchingLemmas(words.get(i)));
+            if (positions[i].length == 0) {
+                return false;
+            }
+        }
+        for (int start : positions[0]) {
+            int i = 1;
+            while (i < positions.length && Arrays.binarySearch(positions[i], start + i) >= 0) {
+                i++;
+            }
+            if (i == positions.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Множитель 1 + weight, если слова запроса стоят подряд, и убывающий с ростом минимального окна,
+     * в котором встречаются все слова.
+     */
+    private float proximityBoost(SearchQuery query, PagePositions page) {
+        List<List<String>> words = query.words();
+        if (words.size() < 2 || !page.complete) {
+            return 1;
+        }
+        int span = minimalWindow(query, page);
+        if (span <= 0) {
+            return 1;
+        }
+        double closeness = span <= words.size() ? 1 : (double) (words.size() - 1) / (span - 1);
+        return (float) (1 + searchSettings.getPositions().getProximityWeight() * closeness);
+    }
+
+    /**
+     * Длина наименьшего окна позиций, содержащего хотя бы одно вхождение каждого слова, или 0.
+     */
+    private static int minimalWindow(SearchQuery query, PagePositions page) {
+        List<List<String>> words = query.words();
+        int total = 0;
+        int[][] positions = new int[words.size()][];
+        for (int i = 0; i < words.size(); i++) {
+            positions[i] = page.positionsOf(query.matchingLemmas(words.get(i)));
+            if (positions[i].length == 0) {
+                return 0;
+            }
+            total += positions[i].length;
+        }
+        long[] entries = new long[total];
+        int size = 0;
+        for (int word = 0; word < positions.length; word++) {
+            for (int position : positions[word]) {
+                entries[size++] = ((long) position << 32) | word;
+            }
+        }
+        Arrays.sort(entries);
+
+        int[] counts = new int[words.size()];
+        int covered = 0;
+        int best = Integer.MAX_VALUE;
+        int left = 0;
+        for (long entry : entries) {
+            if (counts[(int) entry]++ == 0) {
+                covered++;
+            }
+            while (covered == words.size()) {
+                best = Math.min(best, (int) (entry >>> 32) - (int) (entries[left] >>> 32) + 1);
+                if (--counts[(int) entries[left]] == 0) {
+                    covered--;
+                }
+                left++;
+            }
+        }
+        return best == Integer.MAX_VALUE ? 0 : best;
+    }
+
+    private static class PagePositions {
+        private static final PagePositions UNKNOWN = new PagePositions(false);
+
+        private final Map<String, int[]> byLemma = new HashMap<>();
+        private boolean complete;
+
+        PagePositions(boolean complete) {
+            this.complete = complete;
+        }
+
+        /**
+         * Позиции слова — объединение позиций всех его нормальных форм и их альтернатив.
+         */
+        int[] positionsOf(List<String> forms) {
+            int[] merged = null;
+            for (String form : forms) {
+                int[] positions = byLemma.get(form);
+                if (positions != null) {
+                    merged = merged == null ? positions : merge(merged, positions);
+                }
+            }
+            return merged == null ? NO_POSITIONS : merged;
+        }
+
+        private static int[] merge(int[] left, int[] right) {
+            int[] merged = new int[left.length + right.length];
+            int i = 0;
+            int j = 0;
+            int size = 0;
+            while (i < left.length || j < right.length) {
+                int next = j == right.length || (i < left.length && left[i] <= right[j]) ? left[i++] : right[j++];
+                if (size == 0 || merged[size - 1] != next) {
+                    merged[size++] = next;
+                }
+            }
+            return Arrays.copyOf(merged, size);
+        }
+    }
+
+    private record PageLemma(int pageId, String lemma) {
+    }
+
+    /**
+     * @param positions номера слов леммы на странице или null, если у страницы нет карты слов
+     */
+    private record CachedPositions(int[] positions, long generation) {
+    }
+}
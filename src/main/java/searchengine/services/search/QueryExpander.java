@@ -0,0 +1,73 @@
+package searchengine.services.search;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.services.search.index.QueryTerm;
+import searchengine.services.search.scoring.DocumentFrequencyTable;
+import searchengine.services.suggest.LemmaTrie;
+import searchengine.services.suggest.LemmaTrieProvider;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Исправление опечаток: лемма запроса, не встречающаяся ни на одной странице (сайта), заменяется
+ * на несколько ближайших по расстоянию Левенштейна лемм словаря, при равном расстоянии — более частых.
+ * Число альтернатив ограничено {@code search.fuzzy.max-expansions}, чтобы объединение списков вхождений
+ * оставалось дешевым.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QueryExpander {
+
+    private static final int CANDIDATES_PER_EXPANSION = 4;
+
+    private final SearchSettings searchSettings;
+    private final DocumentFrequencyTable documentFrequencyTable;
+    private final LemmaTrieProvider lemmaTrieProvider;
+
+    /**
+     * @param siteId сайт, которым ограничен поиск, или null для всех сайтов
+     */
+    public SearchQuery expand(SearchQuery query, Integer siteId) {
+        SearchSettings.Fuzzy settings = searchSettings.getFuzzy();
+        LemmaTrie trie = lemmaTrieProvider.current();
+        if (!settings.isEnabled() || !documentFrequencyTable.isReady() || trie.lemmaCount() == 0) {
+            return query;
+        }
+        Map<String, QueryTerm> expansions = new LinkedHashMap<>();
+        for (String lemma : new LinkedHashSet<>(query.lemmas())) {
+            if (lemma.length() < settings.getMinWordLength()
+                    || documentFrequencyTable.documentFrequency(lemma, siteId) > 0) {
+                continue;
+            }
+            int maxDistance = lemma.length() <= settings.getShortWordLength()
+                    ? Math.min(1, settings.getMaxDistance())
+                    : settings.getMaxDistance();
+            List<String> alternatives = new ArrayList<>();
+            List<Float> weights = new ArrayList<>();
+            for (LemmaTrie.FuzzyMatch match : trie.fuzzy(lemma, maxDistance,
+                    settings.getMaxExpansions() * CANDIDATES_PER_EXPANSION)) {
+                if (alternatives.size() == settings.getMaxExpansions()) {
+                    break;
+                }
+                if (siteId != null && documentFrequencyTable.documentFrequency(match.lemma(), siteId) == 0) {
+                    continue;
+                }
+                alternatives.add(match.lemma());
+                weights.add(1f / (1 + match.distance()));
+            }
+            if (!alternatives.isEmpty()) {
+                log.info("Лемма {} не найдена в индексе, заменена на {}", lemma, alternatives);
+                expansions.put(lemma, new QueryTerm(alternatives, weights));
+            }
+        }
+        return expansions.isEmpty() ? query : query.withExpansions(expansions);
+    }
+}
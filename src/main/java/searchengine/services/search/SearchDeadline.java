@@ -0,0 +1,53 @@
+package searchengine.services.search;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Срок выполнения поискового запроса. Истекает по таймеру {@link SearchExecutor} или при отмене запроса
+ * клиентом. Обход списков вхождений и чтение рангов опрашивают {@link #shouldStop()} и останавливаются,
+ * сохраняя уже оцененные страницы; запросы к БД отменяются через {@link #onExpire(Runnable)}.
+ * Ответ, посчитанный после остановки, помечается неполным.
+ */
+public class SearchDeadline {
+
+    private final Set<Runnable> actions = ConcurrentHashMap.newKeySet();
+    private volatile boolean expired;
+    private volatile boolean partial;
+
+    public void expire() {
+        expired = true;
+        for (Runnable action : actions) {
+            if (actions.remove(action)) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * true, если срок истек: вызывающий прекращает работу, и результат запроса считается неполным.
+     */
+    public boolean shouldStop() {
+        if (expired) {
+            partial = true;
+        }
+        return expired;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Регистрирует действие, выполняемое при истечении срока, или выполняет его сразу, если срок уже истек.
+     * Возвращает отмену регистрации.
+     */
+    public Runnable onExpire(Runnable action) {
+        Runnable registered = () -> action.run();
+        actions.add(registered);
+        if (expired && actions.remove(registered)) {
+            registered.run();
+        }
+        return () -> actions.remove(registered);
+    }
+}
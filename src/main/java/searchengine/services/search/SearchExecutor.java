@@ -0,0 +1,70 @@
+package searchengine.services.search;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Пул потоков асинхронного поиска и таймер сроков запросов. Поток веб-сервера не ждет поиск, а число
+ * одновременно выполняемых запросов ограничено {@code search.async.threads}; остальные ждут в очереди,
+ * и срок отсчитывается с момента постановки в очередь.
+ */
+@Component
+@RequiredArgsConstructor
+public class SearchExecutor {
+
+    private final SearchSettings searchSettings;
+
+    private ExecutorService workers;
+    private ScheduledExecutorService timer;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(searchSettings.getAsync().getThreads(), task -> {
+            Thread thread = new Thread(task, "search-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "search-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Запускает поиск со сроком {@code search.async.deadline-millis}. Отмена возвращенного future
+     * досрочно истекает срок, и поиск останавливается.
+     */
+    public <T> CompletableFuture<T> submit(Function<SearchDeadline, T> search) {
+        SearchDeadline deadline = new SearchDeadline();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> search.apply(deadline), workers);
+        ScheduledFuture<?> expiration = timer.schedule(deadline::expire,
+                searchSettings.getAsync().getDeadlineMillis(), TimeUnit.MILLISECONDS);
+        future.whenComplete((result, error) -> {
+            expiration.cancel(false);
+            if (future.isCancelled()) {
+                deadline.expire();
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,75 @@
+package searchengine.services.search;
+
+import searchengine.services.search.index.QueryTerm;
+import searchengine.utility.LemmaExecute;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Разобранный поисковый запрос: нормальные формы значимых слов по порядку и фразы, взятые в кавычки.
+ * Фраза из одного слова ничем не отличается от слова и не сохраняется. Леммам, которых нет в индексе,
+ * могут быть сопоставлены ближайшие по написанию леммы ({@link QueryExpander}).
+ */
+public record SearchQuery(List<List<String>> words, List<Phrase> phrases, Map<String, QueryTerm> expansions) {
+
+    private static final Pattern QUOTED = Pattern.compile("\"([^\"]+)\"");
+
+    public static SearchQuery parse(String text) {
+        List<Phrase> phrases = new ArrayList<>();
+        Matcher matcher = QUOTED.matcher(text);
+        while (matcher.find()) {
+            List<List<String>> words = LemmaExecute.getLemmaGroups(matcher.group(1));
+            if (words.size() > 1) {
+                phrases.add(new Phrase(words));
+            }
+        }
+        return new SearchQuery(LemmaExecute.getLemmaGroups(text), phrases, Map.of());
+    }
+
+    public SearchQuery withExpansions(Map<String, QueryTerm> expansions) {
+        return new SearchQuery(words, phrases, expansions);
+    }
+
+    public List<String> lemmas() {
+        List<String> lemmas = new ArrayList<>();
+        words.forEach(lemmas::addAll);
+        return lemmas;
+    }
+
+    public boolean hasPhrases() {
+        return !phrases.isEmpty();
+    }
+
+    /**
+     * Слова для поиска по индексу: каждая лемма отдельно, неизвестная лемма — вместе с альтернативами.
+     */
+    public List<QueryTerm> terms(Collection<String> lemmas) {
+        return new LinkedHashSet<>(lemmas).stream()
+                .map(lemma -> expansions.getOrDefault(lemma, QueryTerm.of(lemma)))
+                .toList();
+    }
+
+    /**
+     * Леммы, вхождения которых засчитываются за {@code lemmas}: сами леммы и их альтернативы.
+     */
+    public List<String> matchingLemmas(Collection<String> lemmas) {
+        List<String> matching = new ArrayList<>();
+        for (String lemma : lemmas) {
+            QueryTerm expansion = expansions.get(lemma);
+            matching.addAll(expansion == null ? List.of(lemma) : expansion.lemmas());
+        }
+        return matching;
+    }
+
+    /**
+     * @param words нормальные формы каждого слова фразы, слова идут подряд
+     */
+    public record Phrase(List<List<String>> words) {
+    }
+}
@@ -0,0 +1,135 @@
+package searchengine.services.search;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.ApiSearchResponse;
+import searchengine.dto.statistics.CacheStatistics;
+import searchengine.services.managers.IndexGeneration;
+import searchengine.utility.ConcurrentLruCache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Кэш ответов поиска по набору лемм запроса, сайту и окну выдачи. Ответ действителен, пока не сменилось
+ * поколение индекса и не истек TTL. Одинаковые запросы, пришедшие во время расчета, ждут его результат,
+ * а не считают заново, но каждый в пределах своего срока: если общий расчет остановлен по сроку или отмене
+ * первого запроса и вернул неполный ответ, ожидающие считают сами. Неполные ответы не кэшируются.
+ */
+@Component
+public class SearchResultCache {
+
+    private final SearchSettings.Cache settings;
+    private final IndexGeneration indexGeneration;
+    private final ConcurrentLruCache<Key, CachedResponse> cache;
+    private final Map<Key, CompletableFuture<ApiSearchResponse>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    public SearchResultCache(SearchSettings searchSettings, IndexGeneration indexGeneration) {
+        this.settings = searchSettings.getCache();
+        this.indexGeneration = indexGeneration;
+        this.cache = new ConcurrentLruCache<>(settings.getMaxEntries());
+    }
+
+    /**
+     * @param deadline срок запроса, который вычисляет {@code loader}; ожидание чужого расчета им ограничено
+     */
+    public ApiSearchResponse get(Key key, SearchDeadline deadline, Supplier<ApiSearchResponse> loader) {
+        if (!settings.isEnabled()) {
+            return loader.get();
+        }
+        while (true) {
+            long generation = indexGeneration.current();
+            long now = System.nanoTime();
+            CachedResponse cached = cache.getIfValid(key, entry -> entry.generation() == generation
+                    && now - entry.createdAt() < TimeUnit.SECONDS.toNanos(settings.getTtlSeconds()));
+            if (cached != null) {
+                return cached.response();
+            }
+
+            CompletableFuture<ApiSearchResponse> future = new CompletableFuture<>();
+            CompletableFuture<ApiSearchResponse> running = inFlight.putIfAbsent(key, future);
+            if (running == null) {
+                return load(key, generation, future, loader);
+            }
+            coalesced.increment();
+            ApiSearchResponse shared = await(running, deadline);
+            if (shared != null && !shared.isPartial()) {
+                return shared;
+            }
+            if (deadline.shouldStop()) {
+                return loader.get();
+            }
+        }
+    }
+
+    /**
+     * Расчет снимается из inFlight до того, как ожидающие получат ответ: иначе ожидающий, которому достался
+     * неполный ответ, снова присоединился бы к уже завершенному расчету.
+     */
+    private ApiSearchResponse load(Key key, long generation, CompletableFuture<ApiSearchResponse> future,
+                                   Supplier<ApiSearchResponse> loader) {
+        ApiSearchResponse response;
+        try {
+            response = loader.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        if (!response.isPartial()) {
+            cache.put(key, new CachedResponse(response, generation, System.nanoTime()));
+        }
+        inFlight.remove(key, future);
+        future.complete(response);
+        return response;
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStatistics statistics = cache.statistics("search-results");
+        statistics.setCoalesced(coalesced.sum());
+        return statistics;
+    }
+
+    /**
+     * Ответ общего расчета или null, если срок ожидающего истек раньше.
+     */
+    private static ApiSearchResponse await(CompletableFuture<ApiSearchResponse> running, SearchDeadline deadline) {
+        CompletableFuture<Void> woken = new CompletableFuture<>();
+        running.whenComplete((response, error) -> woken.complete(null));
+        Runnable unregister = deadline.onExpire(() -> woken.complete(null));
+        try {
+            woken.join();
+        } finally {
+            unregister.run();
+        }
+        if (!running.isDone()) {
+            return null;
+        }
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param lemmas  отсортированные различные леммы запроса
+     * @param phrases фразы запроса в кавычках
+     * @param siteId  сайт, которым ограничен поиск, или null
+     */
+    public record Key(List<String> lemmas, List<SearchQuery.Phrase> phrases, Integer siteId, int offset, int limit) {
+    }
+
+    private record CachedResponse(ApiSearchResponse response, long generation, long createdAt) {
+    }
+}
@@ -3,6 +3,10 @@ package searchengine.services.search;
 import org.springframework.http.ResponseEntity;
 import searchengine.dto.search.ApiSearchResponse;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface SearchService {
     ResponseEntity<ApiSearchResponse> search(String query, String url, int offset, int limit);
+
+    CompletableFuture<ResponseEntity<ApiSearchResponse>> searchAsync(String query, String url, int offset, int limit);
 }
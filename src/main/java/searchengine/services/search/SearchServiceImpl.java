@@ -2,18 +2,31 @@ package searchengine.services.search;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.dto.indexing.PageText;
 import searchengine.dto.search.ApiSearchResponse;
 import searchengine.dto.search.ApiSearchResult;
-import searchengine.entity.PageEntity;
 import searchengine.entity.SiteEntity;
+import searchengine.repository.PageRepository;
 import searchengine.services.managers.RepositoryManager;
+import searchengine.services.search.index.InvertedIndex;
+import searchengine.services.search.index.QueryTerm;
+import searchengine.services.search.index.ScoredPage;
+import searchengine.services.search.index.SearchHits;
+import searchengine.services.search.index.ShardExecutor;
+import searchengine.services.search.scoring.DocumentFrequencyTable;
+import searchengine.services.search.scoring.DocumentStatistics;
+import searchengine.services.search.scoring.Scorer;
+import searchengine.services.search.scoring.TermStatistics;
+import searchengine.services.store.IndexStore;
 import searchengine.utility.LemmaExecute;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -22,104 +35,226 @@ import java.util.stream.Collectors;
 public class SearchServiceImpl implements SearchService {
 
     private final RepositoryManager repositoryManager;
-    private static final int LEMMA_FREQUENCY_THRESHOLD_PERCENT = 10;
-    private static final int MAX_RESULTS = 500;
+    private final SearchSettings searchSettings;
+    private final InvertedIndex invertedIndex;
+    private final Scorer scorer;
+    private final DocumentStatistics documentStatistics;
+    private final DocumentFrequencyTable documentFrequencyTable;
+    private final SearchResultCache searchResultCache;
+    private final PositionalRescorer positionalRescorer;
+    private final QueryExpander queryExpander;
+    private final ShardExecutor shardExecutor;
+    private final SearchExecutor searchExecutor;
 
     @Override
     public ResponseEntity<ApiSearchResponse> search(String query, String url, int offset, int limit) {
-        log.info("Search query: {}, site: {}, offset: {}, limit: {}", query, url, offset, limit);
+        return search(query, url, offset, limit, new SearchDeadline());
+    }
 
-        if (query == null || query.trim().isEmpty()) {
-            return successResponse(0, Collections.emptyList());
+    /**
+     * Поиск в пуле {@link SearchExecutor} со сроком: по его истечении возвращаются лучшие из уже оцененных
+     * страниц с признаком partial.
+     */
+    @Override
+    public CompletableFuture<ResponseEntity<ApiSearchResponse>> searchAsync(String query, String url,
+                                                                          int offset, int limit) {
+        if (!searchSettings.getAsync().isEnabled()) {
+            return CompletableFuture.completedFuture(search(query, url, offset, limit));
         }
+        return searchExecutor.submit(deadline -> search(query, url, offset, limit, deadline));
+    }
 
-        List<String> lemmas = LemmaExecute.getLemmaList(query);
-        List<String> filteredLemmas = filterRareLemmas(lemmas);
+    private ResponseEntity<ApiSearchResponse> search(String query, String url, int offset, int limit,
+                                                     SearchDeadline deadline) {
+        log.info("Search query: {}, site: {}, offset: {}, limit: {}", query, url, offset, limit);
 
-        List<PageEntity> pages = getRelevantPages(filteredLemmas);
-        if (pages.isEmpty()) {
+        if (query == null || query.trim().isEmpty()) {
             return successResponse(0, Collections.emptyList());
         }
 
-        List<ApiSearchResult> results = calculateRelevance(pages, filteredLemmas);
-        int total = results.size();
-        results = results.stream().skip(offset).limit(limit).collect(Collectors.toList());
+        SiteEntity siteEntity = null;
+        if (url != null && !url.isEmpty()) {
+            Optional<SiteEntity> siteEntityOpt = repositoryManager.findIndexedSite(url);
+            if (siteEntityOpt.isEmpty()) {
+                return errorResponse("Указанный сайт не найден среди индексируемых");
+            }
+            siteEntity = siteEntityOpt.get();
+        }
 
-        return successResponse(total, results);
+        SearchQuery searchQuery = SearchQuery.parse(query);
+        List<String> lemmas = searchQuery.lemmas();
+        log.info("Леммы из запроса: {}, фразы: {}", lemmas, searchQuery.phrases().size());
+        int from = Math.max(offset, 0);
+        int size = Math.max(limit, 0);
+        SiteEntity site = siteEntity;
+        SearchResultCache.Key key = new SearchResultCache.Key(lemmas.stream().distinct().sorted().toList(),
+                searchQuery.phrases(), site == null ? null : site.getId(), from, size);
+        return ResponseEntity.ok(searchResultCache.get(key, deadline,
+                () -> searchPage(searchQuery, site, from, size, deadline)));
     }
 
-    private List<String> filterRareLemmas(List<String> lemmas) {
-        int totalPages = repositoryManager.getTotalPageCount();
-        int threshold = (int) (totalPages * (LEMMA_FREQUENCY_THRESHOLD_PERCENT / 100.0));
+    private ApiSearchResponse searchPage(SearchQuery parsedQuery, SiteEntity siteEntity, int from, int size,
+                                         SearchDeadline deadline) {
+        SearchQuery query = queryExpander.expand(parsedQuery, siteEntity == null ? null : siteEntity.getId());
+        List<String> lemmas = filterFrequentLemmas(query.lemmas(), siteEntity == null ? null : siteEntity.getId());
+        List<QueryTerm> terms = query.terms(lemmas);
 
-        return lemmas.stream()
-                .filter(lemma -> repositoryManager.getLemmaFrequency(lemma) < threshold)
-                .collect(Collectors.toList());
+        SearchHits hits;
+        if (positionalRescorer.applies(query)) {
+            SearchHits candidates = retrievePages(terms, siteEntity,
+                    positionalRescorer.candidateCount(query, from + size), deadline);
+            hits = positionalRescorer.rescore(candidates, query, from + size, deadline);
+        } else {
+            hits = retrievePages(terms, siteEntity, from + size, deadline);
+        }
+        List<ScoredPage> topPages = hits.pages();
+        ApiSearchResponse response;
+        if (topPages.size() <= from) {
+            response = buildResponse(hits.totalHits(), Collections.emptyList());
+        } else {
+            response = buildResponse(hits.totalHits(), hydrate(topPages.subList(from, topPages.size()),
+                    topPages.get(0).score(), query.matchingLemmas(lemmas)));
+        }
+        if (deadline.isPartial()) {
+            log.info("Срок поиска истек, возвращены неполные результаты: {} из {}", topPages.size(), hits.totalHits());
+            response.setPartial(true);
+        }
+        return response;
     }
 
-    private List<PageEntity> getRelevantPages(List<String> lemmas) {
-        return repositoryManager.findTopPages(lemmas, lemmas.size(), MAX_RESULTS);
+    /**
+     * Убирает леммы, которые есть больше чем на {@code max-page-percent} страниц сайта или всех сайтов.
+     * Частоты берутся только из {@link DocumentFrequencyTable}, без запросов к БД: пока она не загружена,
+     * и на коллекции меньше {@code min-pages} страниц леммы не фильтруются. Если частые все леммы,
+     * остается самая редкая из них.
+     */
+    private List<String> filterFrequentLemmas(List<String> lemmas, Integer siteId) {
+        SearchSettings.FrequentLemmas settings = searchSettings.getFrequentLemmas();
+        if (!settings.isEnabled() || lemmas.size() < 2 || !documentFrequencyTable.isReady()) {
+            return lemmas;
+        }
+        int totalPages = documentFrequencyTable.pageCount(siteId);
+        if (totalPages < settings.getMinPages()) {
+            return lemmas;
+        }
+        long threshold = (long) totalPages * settings.getMaxPagePercent() / 100;
+        List<String> filtered = lemmas.stream()
+                .filter(lemma -> documentFrequencyTable.documentFrequency(lemma, siteId) <= threshold)
+                .collect(Collectors.toList());
+        if (filtered.isEmpty()) {
+            return List.of(Collections.min(lemmas,
+                    Comparator.comparingInt(lemma -> documentFrequencyTable.documentFrequency(lemma, siteId))));
+        }
+        if (filtered.size() < lemmas.size()) {
+            log.debug("Частые леммы не ищутся: {}", lemmas.stream().filter(lemma -> !filtered.contains(lemma)).toList());
+        }
+        return filtered;
     }
 
-    private List<ApiSearchResult> calculateRelevance(List<PageEntity> pages, List<String> lemmas) {
-        Map<PageEntity, Float> relevanceMap = new HashMap<>();
-        float maxRelevance = 0;
-
-        for (PageEntity page : pages) {
-            float relevance = repositoryManager.getAbsoluteRelevance(page, lemmas);
-            log.info("Релевантность страницы {}: {}", page.getPath(), relevance);
-            relevanceMap.put(page, relevance);
-            maxRelevance = Math.max(maxRelevance, relevance);
+    /**
+     * k лучших страниц по {@link Scorer}: из индекса в памяти или по рангам лемм, прочитанным из БД.
+     * В SQL-варианте вместо неизвестной леммы берется только ближайшая альтернатива, а при поиске
+     * по всем сайтам ранги читаются и оцениваются по каждому сайту параллельно с общей статистикой лемм.
+     */
+    private SearchHits retrievePages(List<QueryTerm> queryTerms, SiteEntity siteEntity, int k,
+                                     SearchDeadline deadline) {
+        if (queryTerms.isEmpty()) {
+            return SearchHits.EMPTY;
+        }
+        Integer siteId = siteEntity == null ? null : siteEntity.getId();
+        if (searchSettings.isMemoryEngine() && invertedIndex.isReady()) {
+            return invertedIndex.search(queryTerms, siteId, k, scorer, documentStatistics, deadline);
         }
 
-        List<ApiSearchResult> results = new ArrayList<>();
-        for (PageEntity page : pages) {
-            ApiSearchResult result = new ApiSearchResult();
-            result.setSite(page.getSite().getUrl());
-            result.setSiteName(page.getSite().getName());
-            result.setUrl(page.getPath());
-            result.setTitle(extractTitle(page.getContent()));
-            result.setSnippet(generateSnippet(page.getContent(), lemmas));
-            result.setRelevance(relevanceMap.get(page) / maxRelevance);
+        List<String> lemmas = queryTerms.stream().map(term -> term.lemmas().get(0)).toList();
 
-            results.add(result);
+        Map<String, TermStatistics> terms = new HashMap<>();
+        if (documentFrequencyTable.isReady()) {
+            lemmas.forEach(lemma -> terms.put(lemma,
+                    documentStatistics.termStatistics(documentFrequencyTable.documentFrequency(lemma, siteId), siteId)));
+        } else {
+            repositoryManager.getDocumentFrequencies(lemmas, siteEntity).forEach((lemma, frequency) ->
+                    terms.put(lemma, documentStatistics.termStatistics(frequency, siteId)));
         }
 
-        results.sort(Comparator.comparing(ApiSearchResult::getRelevance).reversed());
-        return results;
-    }
-
-    private String generateSnippet(String content, List<String> lemmas) {
-        int snippetSize = 200;
-        int index = -1;
-        for (String lemma : lemmas) {
-            index = content.toLowerCase().indexOf(lemma);
-            if (index != -1) break;
+        if (siteEntity == null && shardExecutor.isParallel()) {
+            List<SiteEntity> sites = repositoryManager.getAllSitesFromRepository();
+            if (sites.size() > 1) {
+                List<Callable<SearchHits>> shards = new ArrayList<>(sites.size());
+                for (SiteEntity site : sites) {
+                    shards.add(() -> scorePages(lemmas, site, terms, k, deadline));
+                }
+                return SearchHits.merge(shardExecutor.invokeAll(shards), k);
+            }
         }
+        return scorePages(lemmas, siteEntity, terms, k, deadline);
+    }
 
-        if (index == -1) return "";
+    /**
+     * Релевантность по рангам индекса считает {@link searchengine.services.store.IndexStore}: в PostgreSQL — запросом
+     * с ORDER BY и LIMIT k, так что по сети передаются только лучшие страницы.
+     */
+    private SearchHits scorePages(List<String> lemmas, SiteEntity siteEntity, Map<String, TermStatistics> terms,
+                                  int k, SearchDeadline deadline) {
+        return repositoryManager.findTopPages(lemmas, siteEntity,
+                new IndexStore.PageScoring(scorer, terms, documentStatistics::length), k, deadline);
+    }
 
-        int start = Math.max(0, index - snippetSize / 2);
-        int end = Math.min(content.length(), start + snippetSize);
-        String snippet = content.substring(start, end);
+    /**
+     * Заголовок и сниппет строятся только для страниц текущей выдачи.
+     */
+    private List<ApiSearchResult> hydrate(List<ScoredPage> window, float maxRelevance, List<String> lemmas) {
+        Map<Integer, PageRepository.PageView> pagesById = repositoryManager.findPageViews(
+                        window.stream().map(ScoredPage::pageId).toList()).stream()
+                .collect(Collectors.toMap(PageRepository.PageView::getId, page -> page));
 
-        for (String lemma : lemmas) {
-            snippet = snippet.replaceAll("(?i)" + lemma, "<b>" + lemma + "</b>");
+        List<ApiSearchResult> results = new ArrayList<>(window.size());
+        for (ScoredPage scoredPage : window) {
+            PageRepository.PageView page = pagesById.get(scoredPage.pageId());
+            if (page == null) {
+                continue;
+            }
+            ApiSearchResult result = new ApiSearchResult();
+            result.setSite(page.getSiteUrl());
+            result.setSiteName(page.getSiteName());
+            result.setUrl(page.getPath());
+            PageText text = pageText(page);
+            result.setTitle(SnippetBuilder.title(text.getTitle()));
+            result.setSnippet(SnippetBuilder.snippet(text.getText(), text.getTokenMap(), lemmas));
+            result.setRelevance(maxRelevance > 0 ? scoredPage.score() / maxRelevance : 0);
+            results.add(result);
         }
+        return results;
+    }
 
-        return snippet;
+    /**
+     * Страницы, проиндексированные до появления текста и карты позиций, разбираются из HTML при показе.
+     */
+    private PageText pageText(PageRepository.PageView page) {
+        if (page.getPlainText() != null) {
+            return new PageText(page.getTitle(), page.getPlainText(), Collections.emptyMap(), page.getTokenMap());
+        }
+        return repositoryManager.findPageContent(page.getId())
+                .map(content -> LemmaExecute.getPageText(Jsoup.parse(content)))
+                .orElseGet(() -> new PageText(null, "", Collections.emptyMap(), null));
     }
 
-    private String extractTitle(String content) {
-        Matcher matcher = Pattern.compile("<title>(.*?)</title>").matcher(content);
-        return matcher.find() ? matcher.group(1) : "Без заголовка";
+    private ResponseEntity<ApiSearchResponse> errorResponse(String message) {
+        ApiSearchResponse response = new ApiSearchResponse();
+        response.setResult(false);
+        response.setMessageError(message);
+        return ResponseEntity.badRequest().body(response);
     }
 
     private ResponseEntity<ApiSearchResponse> successResponse(int count, List<ApiSearchResult> data) {
+        return ResponseEntity.ok(buildResponse(count, data));
+    }
+
+    private ApiSearchResponse buildResponse(int count, List<ApiSearchResult> data) {
         ApiSearchResponse response = new ApiSearchResponse();
         response.setResult(true);
         response.setCount(count);
         response.setData(data);
-        return ResponseEntity.ok(response);
+        return response;
     }
 }
@@ -0,0 +1,120 @@
+package searchengine.services.search;
+
+import lombok.experimental.UtilityClass;
+import searchengine.utility.TokenMap;
+
+import java.util.List;
+
+/**
+ * Сниппет по тексту и карте позиций слов, сохраненным при индексации: выбирается окно текста с наибольшим
+ * числом различных лемм запроса, а подсветка ставится по смещениям слов, без регулярных выражений.
+ */
+@UtilityClass
+class SnippetBuilder {
+
+    private static final int SNIPPET_SIZE = 200;
+    private static final String ELLIPSIS = "...";
+    private static final String NO_TITLE = "Без заголовка";
+
+    static String title(String title) {
+        return title == null || title.isBlank() ? NO_TITLE : escape(title, 0, title.length());
+    }
+
+    static String snippet(String text, byte[] tokenMap, List<String> lemmas) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        int[] matches = TokenMap.find(tokenMap, lemmas);
+        if (matches.length == 0) {
+            int to = wordEnd(text, Math.min(text.length(), SNIPPET_SIZE), 0);
+            return escape(text, 0, to) + (to < text.length() ? ELLIPSIS : "");
+        }
+
+        int[] window = densestWindow(matches, lemmas.size());
+        int first = window[0];
+        int last = window[1];
+        int padding = Math.max(0, SNIPPET_SIZE - (matches[last + 1] - matches[first])) / 2;
+        int from = wordStart(text, Math.max(0, matches[first] - padding), matches[first]);
+        int to = wordEnd(text, Math.min(text.length(), matches[last + 1] + padding), matches[last + 1]);
+
+        StringBuilder snippet = new StringBuilder(to - from + 64);
+        if (from > 0) {
+            snippet.append(ELLIPSIS);
+        }
+        int position = from;
+        for (int i = first; i <= last; i += 3) {
+            snippet.append(escape(text, position, matches[i]))
+                    .append("<b>").append(escape(text, matches[i], matches[i + 1])).append("</b>");
+            position = matches[i + 1];
+        }
+        snippet.append(escape(text, position, to));
+        if (to < text.length()) {
+            snippet.append(ELLIPSIS);
+        }
+        return snippet.toString();
+    }
+
+    /**
+     * Индексы первой и последней тройки окна длиной не больше {@link #SNIPPET_SIZE}: больше различных лемм
+     * запроса, при равенстве — больше совпадений.
+     */
+    private static int[] densestWindow(int[] matches, int lemmaCount) {
+        int[] counts = new int[lemmaCount];
+        int distinct = 0;
+        int bestFirst = 0;
+        int bestLast = 0;
+        int bestDistinct = 0;
+        int bestCount = 0;
+        int first = 0;
+        for (int last = 0; last < matches.length; last += 3) {
+            if (counts[matches[last + 2]]++ == 0) {
+                distinct++;
+            }
+            while (matches[last + 1] - matches[first] > SNIPPET_SIZE && first < last) {
+                if (--counts[matches[first + 2]] == 0) {
+                    distinct--;
+                }
+                first += 3;
+            }
+            int count = (last - first) / 3 + 1;
+            if (distinct > bestDistinct || (distinct == bestDistinct && count > bestCount)) {
+                bestDistinct = distinct;
+                bestCount = count;
+                bestFirst = first;
+                bestLast = last;
+            }
+        }
+        return new int[]{bestFirst, bestLast};
+    }
+
+    private static int wordStart(String text, int from, int limit) {
+        if (from == 0) {
+            return 0;
+        }
+        int space = text.indexOf(' ', from);
+        return space >= 0 && space < limit ? space + 1 : from;
+    }
+
+    private static int wordEnd(String text, int to, int limit) {
+        if (to >= text.length()) {
+            return text.length();
+        }
+        int space = text.lastIndexOf(' ', to);
+        return space > limit ? space : to;
+    }
+
+    private static String escape(String text, int from, int to) {
+        StringBuilder escaped = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '&' -> escaped.append("&amp;");
+                case '"' -> escaped.append("&quot;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
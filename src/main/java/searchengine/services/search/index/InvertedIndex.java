@@ -0,0 +1,471 @@
+package searchengine.services.search.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SearchSettings;
+import searchengine.services.search.SearchDeadline;
+import searchengine.services.search.scoring.DocumentStatistics;
+import searchengine.services.search.scoring.Scorer;
+import searchengine.services.search.scoring.TermStatistics;
+
+import java.sql.PreparedStatement;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Инвертированный индекс в памяти: для каждой леммы сайта (lemma id) отсортированный массив id страниц
+ * с рангами. Строится из БД после старта приложения и обновляется после коммита записей индексов и удалений.
+ * Пока индекс не загружен, {@link #isReady()} возвращает false и поиск идет через SQL.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InvertedIndex {
+
+    private static final int LOAD_FETCH_SIZE = 10_000;
+    private static final int DEADLINE_CHECK_MASK = 0xFF;
+    private static final String SELECT_LEMMAS = "SELECT id, site_id, lemma FROM sites_parsing.lemmas";
+    private static final String SELECT_POSTINGS =
+            "SELECT lemma_id, page_id, rank FROM sites_parsing.indexes_table ORDER BY page_id";
+
+    private final SearchSettings searchSettings;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ShardExecutor shardExecutor;
+
+    private volatile IndexLists lists = new IndexLists();
+
+    /**
+     * Обновления берут блокировку на чтение и идут параллельно. Загрузка читает БД в новые списки без блокировки,
+     * а обновления, пришедшие за это время, применяются к текущим спискам и записываются в журнал; под блокировкой
+     * на запись журнал повторяется на новых списках, и они заменяют текущие. Добавление и удаление идемпотентны,
+     * поэтому обновление, уже попавшее в прочитанные строки, не дублирует их.
+     */
+    private final ReadWriteLock loadLock = new ReentrantReadWriteLock();
+    private volatile Queue<Consumer<IndexLists>> loadJournal;
+    private volatile boolean ready;
+
+    public boolean isEnabled() {
+        return searchSettings.isMemoryEngine();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        if (!isEnabled()) {
+            return;
+        }
+        Thread loader = new Thread(this::load, "inverted-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    public synchronized void load() {
+        long startedAt = System.nanoTime();
+        Queue<Consumer<IndexLists>> journal = new ConcurrentLinkedQueue<>();
+        setLoadJournal(journal);
+        try {
+            IndexLists loaded = new IndexLists();
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            transaction.executeWithoutResult(status -> {
+                jdbcTemplate.query(SELECT_LEMMAS, (RowCallbackHandler) rs ->
+                        loaded.postingList(rs.getInt("id"), rs.getInt("site_id"), rs.getString("lemma")));
+                jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(SELECT_POSTINGS);
+                    statement.setFetchSize(LOAD_FETCH_SIZE);
+                    return statement;
+                }, (RowCallbackHandler) rs -> {
+                    PostingList list = loaded.byLemmaId.get(rs.getInt("lemma_id"));
+                    if (list != null && list.add(rs.getInt("page_id"), rs.getFloat("rank"))) {
+                        loaded.postingCount.incrementAndGet();
+                    }
+                });
+            });
+            loadLock.writeLock().lock();
+            try {
+                journal.forEach(update -> update.accept(loaded));
+                lists = loaded;
+                loadJournal = null;
+                ready = true;
+            } finally {
+                loadLock.writeLock().unlock();
+            }
+            log.info("Индекс в памяти загружен: {} лемм, {} вхождений за {} мс", loaded.byLemmaId.size(),
+                    loaded.postingCount.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        } catch (Exception e) {
+            setLoadJournal(null);
+            log.error("Не удалось загрузить индекс в память, поиск будет выполняться через SQL", e);
+        }
+    }
+
+    public void add(int lemmaId, int siteId, String lemma, int pageId, float rank) {
+        if (!isEnabled()) {
+            return;
+        }
+        update(current -> current.add(lemmaId, siteId, lemma, pageId, rank));
+    }
+
+    /**
+     * @param pageIdsByLemmaId страницы, удаляемые из списков вхождений, сгруппированные по lemma id
+     */
+    public void removePages(Map<Integer, ? extends Collection<Integer>> pageIdsByLemmaId) {
+        if (!isEnabled()) {
+            return;
+        }
+        update(current -> current.removePages(pageIdsByLemmaId));
+    }
+
+    public void removeSite(int siteId) {
+        if (!isEnabled()) {
+            return;
+        }
+        update(current -> current.removeSite(siteId));
+    }
+
+    public void clear() {
+        loadLock.writeLock().lock();
+        try {
+            lists = new IndexLists();
+            Queue<Consumer<IndexLists>> journal = loadJournal;
+            if (journal != null) {
+                journal.add(IndexLists::clear);
+            }
+        } finally {
+            loadLock.writeLock().unlock();
+        }
+    }
+
+    private void update(Consumer<IndexLists> update) {
+        loadLock.readLock().lock();
+        try {
+            update.accept(lists);
+            Queue<Consumer<IndexLists>> journal = loadJournal;
+            if (journal != null) {
+                journal.add(update);
+            }
+        } finally {
+            loadLock.readLock().unlock();
+        }
+    }
+
+    private void setLoadJournal(Queue<Consumer<IndexLists>> journal) {
+        loadLock.writeLock().lock();
+        try {
+            loadJournal = journal;
+        } finally {
+            loadLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * k самых релевантных страниц среди содержащих все слова запроса и общее число таких страниц.
+     * Пересечение идет по каждому сайту от самого редкого списка с галопирующим поиском в остальных.
+     * Страница оценивается {@link Scorer}, только если сумма верхних границ вкладов слов превышает порог
+     * кучи k лучших (MaxScore), а блоки вхождений с низкими границами рангов пропускаются без оценки:
+     * в них только считаются совпадения, поэтому общее число страниц точное и не зависит от k.
+     * Сайты обходятся по убыванию суммы границ, чтобы порог рос быстрее.
+     * Для слова с несколькими альтернативами списки альтернатив объединяются, а документной частотой
+     * считается наибольшая из частот альтернатив, как у синонимов.
+     * В параллельном режиме каждый сайт оценивается отдельно со своей кучей k лучших, и выдачи сливаются
+     * {@link SearchHits#merge}: статистика слов при поиске по всем сайтам общая, поэтому оценки сравнимы.
+     * Когда срок запроса истекает, обход останавливается и возвращаются лучшие из уже оцененных страниц.
+     *
+     * @param siteId сайт, которым ограничен поиск, или null для поиска по всем сайтам
+     */
+    public SearchHits search(Collection<QueryTerm> queryTerms, Integer siteId, int k,
+                             Scorer scorer, DocumentStatistics documents, SearchDeadline deadline) {
+        Set<QueryTerm> distinctTerms = new LinkedHashSet<>(queryTerms);
+        if (distinctTerms.isEmpty()) {
+            return SearchHits.EMPTY;
+        }
+        IndexLists current = lists;
+        List<Map<Integer, Postings>> postingsByTerm = new ArrayList<>(distinctTerms.size());
+        List<TermStatistics> terms = new ArrayList<>(distinctTerms.size());
+        Set<Integer> sites = null;
+        for (QueryTerm queryTerm : distinctTerms) {
+            Map<Integer, Postings> bySite = new HashMap<>();
+            int documentFrequency = termPostings(current, queryTerm, siteId, bySite);
+            postingsByTerm.add(bySite);
+            terms.add(documents.termStatistics(documentFrequency, siteId));
+            if (sites == null) {
+                sites = new HashSet<>(bySite.keySet());
+            } else {
+                sites.retainAll(bySite.keySet());
+            }
+        }
+
+        List<SiteTerms> siteTerms = new ArrayList<>(sites.size());
+        for (int site : sites) {
+            List<TermPostings> sitePostings = new ArrayList<>(postingsByTerm.size());
+            for (int t = 0; t < postingsByTerm.size(); t++) {
+                Postings postings = postingsByTerm.get(t).get(site);
+                TermStatistics term = terms.get(t);
+                sitePostings.add(new TermPostings(postings, term, scorer.upperBound(postings.maxRank(), term)));
+            }
+            sitePostings.sort(Comparator.comparingInt(term -> term.postings().size()));
+            siteTerms.add(new SiteTerms(site, sitePostings));
+        }
+        siteTerms.sort(Comparator.comparingDouble(SiteTerms::upperBound).reversed());
+
+        if (siteTerms.size() > 1 && shardExecutor.isParallel()) {
+            List<Callable<SearchHits>> shards = new ArrayList<>(siteTerms.size());
+            for (SiteTerms site : siteTerms) {
+                shards.add(() -> {
+                    TopKCollector shardCollector = new TopKCollector(k);
+                    evaluate(site, scorer, documents, shardCollector, deadline);
+                    return shardCollector.hits();
+                });
+            }
+            return SearchHits.merge(shardExecutor.invokeAll(shards), k);
+        }
+        TopKCollector collector = new TopKCollector(k);
+        for (SiteTerms site : siteTerms) {
+            evaluate(site, scorer, documents, collector, deadline);
+        }
+        return collector.hits();
+    }
+
+    /**
+     * Снимки списков слова по сайтам; возвращает документную частоту слова.
+     */
+    private int termPostings(IndexLists current, QueryTerm queryTerm, Integer siteId, Map<Integer, Postings> bySite) {
+        List<String> lemmas = queryTerm.lemmas();
+        Map<Integer, List<Postings>> alternatives = new HashMap<>();
+        Map<Integer, List<Float>> weights = new HashMap<>();
+        int documentFrequency = 0;
+        for (int i = 0; i < lemmas.size(); i++) {
+            Map<Integer, PostingList> bySiteLists = current.byLemma.getOrDefault(lemmas.get(i), Map.of());
+            int lemmaFrequency = 0;
+            for (Map.Entry<Integer, PostingList> entry : bySiteLists.entrySet()) {
+                if (siteId != null && !siteId.equals(entry.getKey())) {
+                    continue;
+                }
+                Postings postings = entry.getValue().snapshot();
+                lemmaFrequency += postings.size();
+                alternatives.computeIfAbsent(entry.getKey(), site -> new ArrayList<>()).add(postings);
+                weights.computeIfAbsent(entry.getKey(), site -> new ArrayList<>()).add(queryTerm.weights().get(i));
+            }
+            documentFrequency = Math.max(documentFrequency, lemmaFrequency);
+        }
+        alternatives.forEach((site, postings) -> bySite.put(site, postings.size() == 1 && weights.get(site).get(0) == 1f
+                ? postings.get(0)
+                : Postings.union(postings, weights.get(site))));
+        return documentFrequency;
+    }
+
+    public int getLemmaCount() {
+        return lists.byLemmaId.size();
+    }
+
+    public long getPostingCount() {
+        return lists.postingCount.get();
+    }
+
+    /**
+     * Пересечение от самого редкого списка блоками по {@link Postings#BLOCK_SIZE} (Block-Max AND): пока куча
+     * заполнена, блок редкого списка пропускается целиком без поиска в остальных списках, если сумма верхних
+     * границ вкладов по блокам всех слов, пересекающим его диапазон id, не выше порога. В пропущенном блоке
+     * совпадения только считаются, без оценки и кучи.
+     */
+    private static void evaluate(SiteTerms site, Scorer scorer, DocumentStatistics documents,
+                                 TopKCollector collector, SearchDeadline deadline) {
+        List<TermPostings> terms = site.terms();
+        int termCount = terms.size();
+        // remainingBound[t] — сумма верхних границ лемм t..termCount-1
+        float[] remainingBound = new float[termCount + 1];
+        for (int t = termCount - 1; t >= 0; t--) {
+            remainingBound[t] = remainingBound[t + 1] + terms.get(t).upperBound();
+        }
+        int[] positions = new int[termCount];
+        Postings rarest = terms.get(0).postings();
+        int i = 0;
+        scan:
+        while (i < rarest.size()) {
+            if ((i & (Postings.BLOCK_SIZE - 1)) == 0) {
+                if (deadline.shouldStop()) {
+                    return;
+                }
+                if (collector.isFull()) {
+                    int end = rarest.blockEnd(i);
+                    float bound = blockBound(terms, scorer, positions, i, end);
+                    if (bound < 0) {
+                        break;
+                    }
+                    if (bound <= collector.threshold()) {
+                        collector.countHits(countMatches(terms, positions, i, end));
+                        i = end;
+                        continue;
+                    }
+                }
+            }
+            int pageId = rarest.pageIds()[i];
+            positions[0] = i;
+            i++;
+            for (int t = 1; t < termCount; t++) {
+                Postings postings = terms.get(t).postings();
+                int position = postings.advance(pageId, positions[t]);
+                positions[t] = position;
+                if (position >= postings.size()) {
+                    break scan;
+                }
+                if (postings.pageIds()[position] != pageId) {
+                    continue scan;
+                }
+            }
+            collector.countHit();
+            float threshold = collector.threshold();
+            if (remainingBound[0] <= threshold) {
+                continue;
+            }
+            int length = documents.length(pageId);
+            float score = 0;
+            for (int t = 0; t < termCount; t++) {
+                TermPostings term = terms.get(t);
+                score += scorer.score(term.postings().ranks()[positions[t]], length, term.term());
+                if (score + remainingBound[t + 1] <= threshold) {
+                    break;
+                }
+            }
+            collector.offer(pageId, site.siteId(), score);
+        }
+    }
+
+    /**
+     * Число страниц блока редкого списка [from, end), которые есть во всех списках. Позиции остальных списков
+     * сдвигаются так же, как при обходе.
+     */
+    private static int countMatches(List<TermPostings> terms, int[] positions, int from, int end) {
+        Postings rarest = terms.get(0).postings();
+        int matches = 0;
+        pages:
+        for (int i = from; i < end; i++) {
+            int pageId = rarest.pageIds()[i];
+            for (int t = 1; t < terms.size(); t++) {
+                Postings postings = terms.get(t).postings();
+                int position = postings.advance(pageId, positions[t]);
+                positions[t] = position;
+                if (position >= postings.size()) {
+                    return matches;
+                }
+                if (postings.pageIds()[position] != pageId) {
+                    continue pages;
+                }
+            }
+            matches++;
+        }
+        return matches;
+    }
+
+    /**
+     * Сумма верхних границ вкладов слов для страниц блока редкого списка [from, end): у остальных слов берутся
+     * блоки, пересекающие диапазон id блока. Позиции остальных списков сдвигаются к первой странице блока;
+     * если какой-то список закончился, совпадений больше нет и возвращается -1.
+     */
+    private static float blockBound(List<TermPostings> terms, Scorer scorer, int[] positions, int from, int end) {
+        Postings rarest = terms.get(0).postings();
+        int first = rarest.pageIds()[from];
+        int last = rarest.pageIds()[end - 1];
+        float bound = scorer.upperBound(rarest.blockMaxRank(from), terms.get(0).term());
+        for (int t = 1; t < terms.size(); t++) {
+            Postings postings = terms.get(t).postings();
+            int position = postings.advance(first, positions[t]);
+            positions[t] = position;
+            if (position >= postings.size()) {
+                return -1;
+            }
+            float maxRank = postings.blockMaxRank(position);
+            for (int block = postings.blockEnd(position); block < postings.size() && postings.pageIds()[block] <= last;
+                 block = postings.blockEnd(block)) {
+                maxRank = Math.max(maxRank, postings.blockMaxRank(block));
+            }
+            bound += scorer.upperBound(maxRank, terms.get(t).term());
+        }
+        return bound;
+    }
+
+    private record TermPostings(Postings postings, TermStatistics term, float upperBound) {
+    }
+
+    private record SiteTerms(int siteId, List<TermPostings> terms) {
+
+        float upperBound() {
+            float bound = 0;
+            for (TermPostings term : terms) {
+                bound += term.upperBound();
+            }
+            return bound;
+        }
+    }
+
+    /**
+     * Списки вхождений по lemma id и по лемме с сайтом.
+     */
+    private static final class IndexLists {
+        private final Map<Integer, PostingList> byLemmaId = new ConcurrentHashMap<>();
+        private final Map<String, Map<Integer, PostingList>> byLemma = new ConcurrentHashMap<>();
+        private final AtomicLong postingCount = new AtomicLong();
+
+        PostingList postingList(int lemmaId, int siteId, String lemma) {
+            return byLemmaId.computeIfAbsent(lemmaId, id -> {
+                PostingList list = new PostingList(id, siteId, lemma);
+                byLemma.computeIfAbsent(lemma, key -> new ConcurrentHashMap<>()).put(siteId, list);
+                return list;
+            });
+        }
+
+        void add(int lemmaId, int siteId, String lemma, int pageId, float rank) {
+            if (postingList(lemmaId, siteId, lemma).add(pageId, rank)) {
+                postingCount.incrementAndGet();
+            }
+        }
+
+        void removePages(Map<Integer, ? extends Collection<Integer>> pageIdsByLemmaId) {
+            pageIdsByLemmaId.forEach((lemmaId, pageIds) -> {
+                PostingList list = byLemmaId.get(lemmaId);
+                if (list != null) {
+                    int before = list.snapshot().size();
+                    list.removeAll(pageIds);
+                    postingCount.addAndGet(list.snapshot().size() - before);
+                }
+            });
+        }
+
+        void removeSite(int siteId) {
+            byLemmaId.values().removeIf(list -> {
+                if (list.getSiteId() != siteId) {
+                    return false;
+                }
+                postingCount.addAndGet(-list.snapshot().size());
+                Map<Integer, PostingList> bySite = byLemma.get(list.getLemma());
+                if (bySite != null) {
+                    bySite.remove(siteId);
+                }
+                return true;
+            });
+        }
+
+        void clear() {
+            byLemmaId.clear();
+            byLemma.clear();
+            postingCount.set(0);
+        }
+    }
+}
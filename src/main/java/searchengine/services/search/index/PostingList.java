@@ -0,0 +1,123 @@
+package searchengine.services.search.index;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Список вхождений одной леммы сайта. Запись идет под блокировкой: страницы приходят почти всегда
+ * по возрастанию id и дописываются в конец массива без копирования; вставка в середину и удаление
+ * копируют массивы. Читатели берут опубликованный снимок без блокировки. Границы рангов блоков при
+ * дописывании и обновлении ранга только растут на месте, поэтому остаются верными и для старых снимков.
+ */
+final class PostingList {
+
+    private final int lemmaId;
+    private final int siteId;
+    private final String lemma;
+
+    private int[] pageIds = new int[4];
+    private float[] ranks = new float[4];
+    private int size;
+    private float maxRank;
+    private float[] blockMaxRanks = new float[1];
+    private volatile Postings snapshot = Postings.EMPTY;
+
+    PostingList(int lemmaId, int siteId, String lemma) {
+        this.lemmaId = lemmaId;
+        this.siteId = siteId;
+        this.lemma = lemma;
+    }
+
+    int getLemmaId() {
+        return lemmaId;
+    }
+
+    int getSiteId() {
+        return siteId;
+    }
+
+    String getLemma() {
+        return lemma;
+    }
+
+    Postings snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return false, если страница уже была в списке и у нее только обновился ранг
+     */
+    synchronized boolean add(int pageId, float rank) {
+        boolean added = true;
+        maxRank = Math.max(maxRank, rank);
+        if (size == 0 || pageIds[size - 1] < pageId) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size << 1);
+                ranks = Arrays.copyOf(ranks, size << 1);
+            }
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            raiseBlockMax(size, rank);
+            size++;
+        } else {
+            int position = Arrays.binarySearch(pageIds, 0, size, pageId);
+            if (position >= 0) {
+                ranks = ranks.clone();
+                ranks[position] = rank;
+                raiseBlockMax(position, rank);
+                added = false;
+            } else {
+                insert(-position - 1, pageId, rank);
+                blockMaxRanks = Postings.blockMaxRanks(ranks, size);
+            }
+        }
+        snapshot = new Postings(pageIds, ranks, size, maxRank, blockMaxRanks);
+        return added;
+    }
+
+    synchronized void removeAll(Collection<Integer> removedPageIds) {
+        Set<Integer> removed = removedPageIds instanceof Set<Integer> set ? set : new HashSet<>(removedPageIds);
+        int[] newPageIds = new int[Math.max(4, pageIds.length)];
+        float[] newRanks = new float[newPageIds.length];
+        int newSize = 0;
+        float newMaxRank = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removed.contains(pageIds[i])) {
+                newPageIds[newSize] = pageIds[i];
+                newRanks[newSize] = ranks[i];
+                newMaxRank = Math.max(newMaxRank, ranks[i]);
+                newSize++;
+            }
+        }
+        pageIds = newPageIds;
+        ranks = newRanks;
+        size = newSize;
+        maxRank = newMaxRank;
+        blockMaxRanks = Postings.blockMaxRanks(ranks, size);
+        snapshot = new Postings(pageIds, ranks, size, maxRank, blockMaxRanks);
+    }
+
+    private void raiseBlockMax(int position, float rank) {
+        int block = position >> Postings.BLOCK_SHIFT;
+        if (block == blockMaxRanks.length) {
+            blockMaxRanks = Arrays.copyOf(blockMaxRanks, blockMaxRanks.length << 1);
+        }
+        blockMaxRanks[block] = Math.max(blockMaxRanks[block], rank);
+    }
+
+    private void insert(int position, int pageId, float rank) {
+        int[] newPageIds = new int[size == pageIds.length ? size << 1 : pageIds.length];
+        float[] newRanks = new float[newPageIds.length];
+        System.arraycopy(pageIds, 0, newPageIds, 0, position);
+        System.arraycopy(ranks, 0, newRanks, 0, position);
+        newPageIds[position] = pageId;
+        newRanks[position] = rank;
+        System.arraycopy(pageIds, position, newPageIds, position + 1, size - position);
+        System.arraycopy(ranks, position, newRanks, position + 1, size - position);
+        pageIds = newPageIds;
+        ranks = newRanks;
+        size++;
+    }
+}
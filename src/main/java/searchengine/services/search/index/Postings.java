@@ -0,0 +1,111 @@
+package searchengine.services.search.index;
+
+import java.util.List;
+
+/**
+ * Неизменяемый снимок списка вхождений: первые {@code size} элементов массивов, id страниц по возрастанию.
+ * Массивы могут быть длиннее и дописываться после снимка, но элементы снимка больше не меняются.
+ * {@code maxRank} — верхняя граница рангов списка, {@code blockMaxRanks} — верхние границы рангов
+ * в блоках по {@link #BLOCK_SIZE} вхождений; границы блоков после снимка могут только расти.
+ */
+public record Postings(int[] pageIds, float[] ranks, int size, float maxRank, float[] blockMaxRanks) {
+
+    static final int BLOCK_SHIFT = 6;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    static final Postings EMPTY = new Postings(new int[0], new float[0], 0, 0, new float[0]);
+
+    /**
+     * Верхняя граница рангов блока, в который входит позиция.
+     */
+    public float blockMaxRank(int position) {
+        return blockMaxRanks[position >> BLOCK_SHIFT];
+    }
+
+    /**
+     * Позиция после последнего вхождения блока, в который входит позиция.
+     */
+    public int blockEnd(int position) {
+        return Math.min(size, ((position >> BLOCK_SHIFT) + 1) << BLOCK_SHIFT);
+    }
+
+    static float[] blockMaxRanks(float[] ranks, int size) {
+        float[] blockMaxRanks = new float[Math.max(1, blockCount(size))];
+        for (int i = 0; i < size; i++) {
+            blockMaxRanks[i >> BLOCK_SHIFT] = Math.max(blockMaxRanks[i >> BLOCK_SHIFT], ranks[i]);
+        }
+        return blockMaxRanks;
+    }
+
+    static int blockCount(int size) {
+        return (size + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+    }
+
+    /**
+     * Объединение списков: страница входит, если есть хотя бы в одном, ранги складываются с весами.
+     */
+    static Postings union(List<Postings> postings, List<Float> weights) {
+        int total = 0;
+        for (Postings list : postings) {
+            total += list.size();
+        }
+        int[] pageIds = new int[total];
+        float[] ranks = new float[total];
+        int[] positions = new int[postings.size()];
+        int size = 0;
+        float maxRank = 0;
+        while (true) {
+            int next = Integer.MAX_VALUE;
+            for (int i = 0; i < postings.size(); i++) {
+                if (positions[i] < postings.get(i).size()) {
+                    next = Math.min(next, postings.get(i).pageIds()[positions[i]]);
+                }
+            }
+            if (next == Integer.MAX_VALUE) {
+                break;
+            }
+            float rank = 0;
+            for (int i = 0; i < postings.size(); i++) {
+                Postings list = postings.get(i);
+                if (positions[i] < list.size() && list.pageIds()[positions[i]] == next) {
+                    rank += weights.get(i) * list.ranks()[positions[i]];
+                    positions[i]++;
+                }
+            }
+            pageIds[size] = next;
+            ranks[size] = rank;
+            maxRank = Math.max(maxRank, rank);
+            size++;
+        }
+        return new Postings(pageIds, ranks, size, maxRank, blockMaxRanks(ranks, size));
+    }
+
+    /**
+     * Позиция первой страницы с id не меньше {@code pageId}, начиная с {@code from}, или {@code size}.
+     * Галопирующий поиск: шаг удваивается, пока не перепрыгнет искомый id, затем двоичный поиск в последнем шаге.
+     */
+    public int advance(int pageId, int from) {
+        if (from >= size || pageIds[from] >= pageId) {
+            return from;
+        }
+        int low = from;
+        int step = 1;
+        int high = from + step;
+        while (high < size && pageIds[high] < pageId) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        high = Math.min(high, size);
+        // pageIds[low] < pageId, ответ в (low, high]
+        low++;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (pageIds[middle] < pageId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
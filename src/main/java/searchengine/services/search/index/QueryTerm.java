@@ -0,0 +1,18 @@
+package searchengine.services.search.index;
+
+import java.util.List;
+
+/**
+ * Слово запроса для поиска по индексу: одна лемма или несколько альтернатив (исправлений опечатки),
+ * из которых странице достаточно содержать любую. Ранг альтернативы умножается на ее вес.
+ */
+public record QueryTerm(List<String> lemmas, List<Float> weights) {
+
+    public static QueryTerm of(String lemma) {
+        return new QueryTerm(List.of(lemma), List.of(1f));
+    }
+
+    public boolean isExpanded() {
+        return lemmas.size() > 1;
+    }
+}
@@ -0,0 +1,4 @@
+package searchengine.services.search.index;
+
+public record ScoredPage(int pageId, int siteId, float score) {
+}
@@ -0,0 +1,51 @@
+package searchengine.services.search.index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Лучшие страницы запроса по убыванию релевантности и общее число страниц, содержащих все леммы.
+ */
+public record SearchHits(List<ScoredPage> pages, int totalHits) {
+
+    public static final SearchHits EMPTY = new SearchHits(List.of(), 0);
+
+    /**
+     * Слияние выдач шардов в k лучших страниц: куча из текущих голов каждой выдачи, на каждом шаге
+     * забирается лучшая голова. Релевантности шардов должны быть сравнимы между собой, то есть посчитаны
+     * по общей для всех сайтов статистике; порядок при равной релевантности тот же, что у {@link TopKCollector}.
+     */
+    public static SearchHits merge(List<SearchHits> shards, int k) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        Comparator<ScoredPage> bestFirst = TopKCollector.WORST_FIRST.reversed();
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, shards.size()),
+                Comparator.comparing(Cursor::current, bestFirst));
+        int totalHits = 0;
+        for (SearchHits shard : shards) {
+            totalHits += shard.totalHits();
+            if (!shard.pages().isEmpty()) {
+                heap.add(new Cursor(shard.pages(), 0));
+            }
+        }
+        List<ScoredPage> pages = new ArrayList<>();
+        while (pages.size() < k && !heap.isEmpty()) {
+            Cursor cursor = heap.poll();
+            pages.add(cursor.current());
+            if (cursor.index() + 1 < cursor.pages().size()) {
+                heap.add(new Cursor(cursor.pages(), cursor.index() + 1));
+            }
+        }
+        return new SearchHits(pages, totalHits);
+    }
+
+    private record Cursor(List<ScoredPage> pages, int index) {
+
+        ScoredPage current() {
+            return pages.get(index);
+        }
+    }
+}
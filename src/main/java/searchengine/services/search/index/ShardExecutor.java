@@ -0,0 +1,106 @@
+package searchengine.services.search.index;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул потоков для поиска по сайтам-шардам: каждый сайт оценивается отдельной задачей, и время запроса
+ * по всем сайтам определяется самым большим сайтом, а не суммой. Пул общий для всех запросов и ограничен
+ * {@code search.shards.threads}, по умолчанию — числом ядер.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShardExecutor {
+
+    private final SearchSettings searchSettings;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        if (!searchSettings.getShards().isEnabled()) {
+            return;
+        }
+        int threads = searchSettings.getShards().getThreads();
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                task -> {
+                    Thread thread = new Thread(task, "search-shard-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isParallel() {
+        return executor != null;
+    }
+
+    /**
+     * Результаты задач в порядке их передачи. Первая задача выполняется в вызывающем потоке, пока остальные
+     * идут в пуле; при выключенном параллельном режиме все задачи выполняются по очереди.
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (!isParallel() || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<>(tasks.size() - 1);
+        try {
+            for (Callable<T> task : tasks.subList(1, tasks.size())) {
+                futures.add(executor.submit(task));
+            }
+            results.add(call(tasks.get(0)));
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Поиск по сайтам прерван", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException("Ошибка поиска по сайту", cause);
+    }
+}
@@ -0,0 +1,65 @@
+package searchengine.services.search.index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Хранит k лучших страниц в куче с минимумом в корне: новая страница вытесняет худшую,
+ * только если ее релевантность выше порога {@link #threshold()}.
+ */
+public class TopKCollector {
+
+    static final Comparator<ScoredPage> WORST_FIRST = Comparator.comparingDouble(ScoredPage::score)
+            .thenComparing(Comparator.comparingInt(ScoredPage::pageId).reversed());
+
+    private final int k;
+    private final PriorityQueue<ScoredPage> heap;
+    private int totalHits;
+
+    public TopKCollector(int k) {
+        this.k = k;
+        this.heap = new PriorityQueue<>(Math.max(1, k), WORST_FIRST);
+    }
+
+    public void countHit() {
+        totalHits++;
+    }
+
+    /**
+     * Добавляет совпадения, найденные в блоке, пропущенном без оценки.
+     */
+    public void countHits(int count) {
+        totalHits += count;
+    }
+
+    public boolean isFull() {
+        return heap.size() >= k;
+    }
+
+    /**
+     * Релевантность, которую нужно превзойти, чтобы попасть в выдачу; пока куча не заполнена — минус бесконечность.
+     */
+    public float threshold() {
+        return isFull() && k > 0 ? heap.peek().score() : Float.NEGATIVE_INFINITY;
+    }
+
+    public void offer(int pageId, int siteId, float score) {
+        if (k == 0) {
+            return;
+        }
+        if (!isFull()) {
+            heap.add(new ScoredPage(pageId, siteId, score));
+        } else if (score > threshold()) {
+            heap.poll();
+            heap.add(new ScoredPage(pageId, siteId, score));
+        }
+    }
+
+    public SearchHits hits() {
+        List<ScoredPage> pages = new ArrayList<>(heap);
+        pages.sort(WORST_FIRST.reversed());
+        return new SearchHits(pages, totalHits);
+    }
+}
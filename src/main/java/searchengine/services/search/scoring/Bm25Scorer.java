@@ -0,0 +1,54 @@
+package searchengine.services.search.scoring;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "search.scorer", havingValue = "bm25", matchIfMissing = true)
+public class Bm25Scorer implements Scorer {
+
+    private final SearchSettings searchSettings;
+
+    @Override
+    public float score(float termFrequency, int documentLength, TermStatistics term) {
+        double k1 = searchSettings.getBm25K1();
+        double b = searchSettings.getBm25B();
+        double averageLength = term.averageDocumentLength() > 0 ? term.averageDocumentLength() : 1;
+        double length = documentLength > 0 ? documentLength : averageLength;
+        double norm = termFrequency + k1 * (1 - b + b * length / averageLength);
+        return (float) (idf(term) * termFrequency * (k1 + 1) / norm);
+    }
+
+    /**
+     * Нормировка по длине минимальна для пустой страницы: (1 - b) вместо 1 - b + b * dl / avgdl.
+     */
+    @Override
+    public float upperBound(float maxTermFrequency, TermStatistics term) {
+        double k1 = searchSettings.getBm25K1();
+        double b = searchSettings.getBm25B();
+        double norm = maxTermFrequency + k1 * (1 - b);
+        return norm <= 0 ? 0 : (float) (idf(term) * maxTermFrequency * (k1 + 1) / norm);
+    }
+
+    @Override
+    public String toSql(String termFrequency, String documentLength, TermStatistics term) {
+        double k1 = searchSettings.getBm25K1();
+        double b = searchSettings.getBm25B();
+        double averageLength = term.averageDocumentLength() > 0 ? term.averageDocumentLength() : 1;
+        return "(" + idf(term) + " * " + termFrequency + " * " + (k1 + 1) + " / (" + termFrequency + " + " + k1 +
+                " * (" + (1 - b) + " + " + b + " * COALESCE(NULLIF(" + documentLength + ", 0), " + averageLength +
+                ") / " + averageLength + ")))";
+    }
+
+    /**
+     * Не меньше нуля, даже если число документов отстает от частоты леммы: иначе порядок выдачи
+     * перевернулся бы, а верхние оценки для пропуска блоков перестали бы быть верхними.
+     */
+    private static double idf(TermStatistics term) {
+        double documentFrequency = term.documentFrequency();
+        return Math.max(0, Math.log(1 + (term.documentCount() - documentFrequency + 0.5) / (documentFrequency + 0.5)));
+    }
+}
@@ -0,0 +1,277 @@
+package searchengine.services.search.scoring;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Документная частота лемм (число страниц, содержащих лемму) по каждому сайту и по всем сайтам, а также
+ * число проиндексированных страниц. Строится из indexes_table после старта приложения и обновляется после
+ * коммита записи и удаления индексов страниц, поэтому ни фильтр частых лемм, ни статистика для ранжирования
+ * не обращаются к БД.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DocumentFrequencyTable {
+
+    private static final int LOAD_FETCH_SIZE = 10_000;
+    private static final String SELECT_PAGE_LEMMAS =
+            "SELECT i.page_id, l.site_id, l.lemma FROM sites_parsing.indexes_table i " +
+            "JOIN sites_parsing.lemmas l ON l.id = i.lemma_id ORDER BY i.page_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    private volatile Frequencies current = new Frequencies();
+
+    /**
+     * Как и в индексе в памяти: обновления идут под блокировкой на чтение, а загрузка строит частоты без нее,
+     * записывая пришедшие за это время обновления в журнал, и под блокировкой на запись повторяет журнал
+     * и заменяет частоты. Страница учитывается один раз, поэтому повтор не удваивает частоты.
+     */
+    private final ReadWriteLock loadLock = new ReentrantReadWriteLock();
+    private volatile Queue<Consumer<Frequencies>> loadJournal;
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        Thread loader = new Thread(this::load, "document-frequency-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    public synchronized void load() {
+        long startedAt = System.nanoTime();
+        Queue<Consumer<Frequencies>> journal = new ConcurrentLinkedQueue<>();
+        setLoadJournal(journal);
+        try {
+            Frequencies loaded = new Frequencies();
+            PageLemmas page = new PageLemmas();
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            transaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(SELECT_PAGE_LEMMAS);
+                statement.setFetchSize(LOAD_FETCH_SIZE);
+                return statement;
+            }, (RowCallbackHandler) rs -> {
+                int pageId = rs.getInt("page_id");
+                if (pageId != page.pageId) {
+                    page.addTo(loaded);
+                    page.reset(pageId, rs.getInt("site_id"));
+                }
+                page.lemmas.add(rs.getString("lemma"));
+            }));
+            page.addTo(loaded);
+            loadLock.writeLock().lock();
+            try {
+                journal.forEach(update -> update.accept(loaded));
+                current = loaded;
+                loadJournal = null;
+                ready = true;
+            } finally {
+                loadLock.writeLock().unlock();
+            }
+            log.info("Документные частоты загружены: {} лемм, {} страниц за {} мс", loaded.byLemma.size(),
+                    pageCount(null), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        } catch (Exception e) {
+            setLoadJournal(null);
+            log.error("Не удалось загрузить документные частоты, они будут читаться из БД", e);
+        }
+    }
+
+    /**
+     * Леммы копируются: во время загрузки обновление остается в журнале, а вызывающий может переиспользовать список.
+     */
+    public void addPage(int siteId, int pageId, Collection<String> lemmas) {
+        List<String> pageLemmas = List.copyOf(lemmas);
+        update(frequencies -> frequencies.addPage(siteId, pageId, pageLemmas));
+    }
+
+    public void removePage(int siteId, int pageId, Collection<String> lemmas) {
+        List<String> pageLemmas = List.copyOf(lemmas);
+        update(frequencies -> frequencies.removePage(siteId, pageId, pageLemmas));
+    }
+
+    public void removeSite(int siteId) {
+        update(frequencies -> frequencies.removeSite(siteId));
+    }
+
+    public void clear() {
+        update(Frequencies::clear);
+    }
+
+    /**
+     * @param siteId сайт, которым ограничен поиск, или null для всех сайтов
+     */
+    public int documentFrequency(String lemma, Integer siteId) {
+        LemmaFrequency frequency = current.byLemma.get(lemma);
+        if (frequency == null) {
+            return 0;
+        }
+        if (siteId == null) {
+            return frequency.total.get();
+        }
+        AtomicInteger count = frequency.bySite.get(siteId);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @param siteId сайт, которым ограничен поиск, или null для всех сайтов
+     */
+    public int pageCount(Integer siteId) {
+        Map<Integer, SitePages> sitePages = current.sitePages;
+        if (siteId != null) {
+            SitePages pages = sitePages.get(siteId);
+            return pages == null ? 0 : pages.count.get();
+        }
+        return sitePages.values().stream().mapToInt(pages -> pages.count.get()).sum();
+    }
+
+    private void update(Consumer<Frequencies> update) {
+        loadLock.readLock().lock();
+        try {
+            update.accept(current);
+            Queue<Consumer<Frequencies>> journal = loadJournal;
+            if (journal != null) {
+                journal.add(update);
+            }
+        } finally {
+            loadLock.readLock().unlock();
+        }
+    }
+
+    private void setLoadJournal(Queue<Consumer<Frequencies>> journal) {
+        loadLock.writeLock().lock();
+        try {
+            loadJournal = journal;
+        } finally {
+            loadLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Частоты лемм и проиндексированные страницы по сайтам.
+     */
+    private static final class Frequencies {
+        private final Map<String, LemmaFrequency> byLemma = new ConcurrentHashMap<>();
+        private final Map<Integer, SitePages> sitePages = new ConcurrentHashMap<>();
+
+        void addPage(int siteId, int pageId, Collection<String> lemmas) {
+            if (!sitePages.computeIfAbsent(siteId, id -> new SitePages()).add(pageId)) {
+                return;
+            }
+            for (String lemma : lemmas) {
+                byLemma.computeIfAbsent(lemma, key -> new LemmaFrequency()).add(siteId, 1);
+            }
+        }
+
+        void removePage(int siteId, int pageId, Collection<String> lemmas) {
+            SitePages pages = sitePages.get(siteId);
+            if (pages == null || !pages.remove(pageId)) {
+                return;
+            }
+            for (String lemma : lemmas) {
+                LemmaFrequency frequency = byLemma.get(lemma);
+                if (frequency != null) {
+                    frequency.add(siteId, -1);
+                }
+            }
+        }
+
+        void removeSite(int siteId) {
+            if (sitePages.remove(siteId) == null) {
+                return;
+            }
+            byLemma.values().forEach(frequency -> frequency.removeSite(siteId));
+        }
+
+        void clear() {
+            byLemma.clear();
+            sitePages.clear();
+        }
+    }
+
+    private static class LemmaFrequency {
+        private final AtomicInteger total = new AtomicInteger();
+        private final Map<Integer, AtomicInteger> bySite = new ConcurrentHashMap<>();
+
+        void add(int siteId, int delta) {
+            total.addAndGet(delta);
+            bySite.computeIfAbsent(siteId, id -> new AtomicInteger()).addAndGet(delta);
+        }
+
+        void removeSite(int siteId) {
+            AtomicInteger count = bySite.remove(siteId);
+            if (count != null) {
+                total.addAndGet(-count.get());
+            }
+        }
+    }
+
+    private static class SitePages {
+        private final BitSet pageIds = new BitSet();
+        private final AtomicInteger count = new AtomicInteger();
+
+        synchronized boolean add(int pageId) {
+            if (pageIds.get(pageId)) {
+                return false;
+            }
+            pageIds.set(pageId);
+            count.incrementAndGet();
+            return true;
+        }
+
+        synchronized boolean remove(int pageId) {
+            if (!pageIds.get(pageId)) {
+                return false;
+            }
+            pageIds.clear(pageId);
+            count.decrementAndGet();
+            return true;
+        }
+    }
+
+    private static class PageLemmas {
+        private int pageId = -1;
+        private int siteId;
+        private final List<String> lemmas = new ArrayList<>();
+
+        void reset(int pageId, int siteId) {
+            this.pageId = pageId;
+            this.siteId = siteId;
+            lemmas.clear();
+        }
+
+        void addTo(Frequencies frequencies) {
+            if (pageId >= 0) {
+                frequencies.addPage(siteId, pageId, lemmas);
+            }
+        }
+    }
+}
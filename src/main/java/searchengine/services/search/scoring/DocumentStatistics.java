@@ -0,0 +1,123 @@
+package searchengine.services.search.scoring;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Длины документов (число лемм страницы) и их суммы по сайтам для ранжирования. Длины лежат в массиве,
+ * индексированном id страницы: 4 байта на страницу, 0 — длина неизвестна. Заполняется из page.length
+ * при старте и при каждой записи индексов страницы. Страницам, проиндексированным до появления page.length,
+ * длина при старте досчитывается из рангов indexes_table, иначе они не попали бы в число документов.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DocumentStatistics {
+
+    private static final String SELECT_LENGTHS =
+            "SELECT id, site_id, length FROM sites_parsing.page WHERE length IS NOT NULL";
+    private static final String FILL_MISSING_LENGTHS =
+            "UPDATE sites_parsing.page p SET length = (SELECT CAST(SUM(i.rank) AS integer) " +
+            "FROM sites_parsing.indexes_table i WHERE i.page_id = p.id) " +
+            "WHERE p.length IS NULL AND EXISTS (SELECT 1 FROM sites_parsing.indexes_table i WHERE i.page_id = p.id)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile int[] lengths = new int[1024];
+    private final Map<Integer, SiteTotals> siteTotals = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            int filled = jdbcTemplate.update(FILL_MISSING_LENGTHS);
+            if (filled > 0) {
+                log.info("Длины документов досчитаны из индекса: {} страниц", filled);
+            }
+            jdbcTemplate.query(SELECT_LENGTHS, (RowCallbackHandler) rs ->
+                    put(rs.getInt("id"), rs.getInt("site_id"), rs.getInt("length")));
+            log.info("Длины документов загружены: {} страниц", totals(null).pages.get());
+        } catch (Exception e) {
+            log.error("Не удалось загрузить длины документов", e);
+        }
+    }
+
+    public synchronized void put(int pageId, int siteId, int length) {
+        if (pageId >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, Math.max(pageId + 1, lengths.length << 1));
+        }
+        int previous = lengths[pageId];
+        SiteTotals totals = siteTotals.computeIfAbsent(siteId, id -> new SiteTotals());
+        if (previous == 0) {
+            totals.pages.incrementAndGet();
+        }
+        totals.length.addAndGet(length - previous);
+        lengths[pageId] = length;
+    }
+
+    public synchronized void remove(int siteId, Collection<Integer> pageIds) {
+        SiteTotals totals = siteTotals.get(siteId);
+        for (int pageId : pageIds) {
+            if (pageId < lengths.length && lengths[pageId] != 0) {
+                if (totals != null) {
+                    totals.pages.decrementAndGet();
+                    totals.length.addAndGet(-lengths[pageId]);
+                }
+                lengths[pageId] = 0;
+            }
+        }
+    }
+
+    /**
+     * Длины страниц удаленного сайта остаются в массиве: id страниц не переиспользуются до полной очистки.
+     */
+    public void removeSite(int siteId) {
+        siteTotals.remove(siteId);
+    }
+
+    public synchronized void clear() {
+        lengths = new int[1024];
+        siteTotals.clear();
+    }
+
+    public int length(int pageId) {
+        int[] current = lengths;
+        return pageId < current.length ? current[pageId] : 0;
+    }
+
+    /**
+     * @param siteId сайт, которым ограничен поиск, или null для всех сайтов
+     */
+    public TermStatistics termStatistics(int documentFrequency, Integer siteId) {
+        SiteTotals totals = totals(siteId);
+        long pages = totals.pages.get();
+        return new TermStatistics(documentFrequency, pages, pages == 0 ? 0 : (double) totals.length.get() / pages);
+    }
+
+    private SiteTotals totals(Integer siteId) {
+        if (siteId != null) {
+            return siteTotals.getOrDefault(siteId, new SiteTotals());
+        }
+        SiteTotals all = new SiteTotals();
+        for (SiteTotals totals : siteTotals.values()) {
+            all.pages.addAndGet(totals.pages.get());
+            all.length.addAndGet(totals.length.get());
+        }
+        return all;
+    }
+
+    private static class SiteTotals {
+        private final AtomicLong pages = new AtomicLong();
+        private final AtomicLong length = new AtomicLong();
+    }
+}
@@ -0,0 +1,26 @@
+package searchengine.services.search.scoring;
+
+/**
+ * Вклад одной леммы запроса в релевантность страницы. Релевантность страницы — сумма вкладов всех лемм.
+ */
+public interface Scorer {
+
+    /**
+     * @param termFrequency  сколько раз лемма встречается на странице (ранг индекса)
+     * @param documentLength число лемм на странице
+     */
+    float score(float termFrequency, int documentLength, TermStatistics term);
+
+    /**
+     * Верхняя граница {@link #score} для любой страницы, где ранг леммы не больше {@code maxTermFrequency}.
+     */
+    float upperBound(float maxTermFrequency, TermStatistics term);
+
+    /**
+     * SQL-выражение, равное {@link #score}, для подсчета релевантности в БД.
+     *
+     * @param termFrequency  выражение с рангом индекса
+     * @param documentLength выражение с числом лемм на странице
+     */
+    String toSql(String termFrequency, String documentLength, TermStatistics term);
+}
@@ -0,0 +1,7 @@
+package searchengine.services.search.scoring;
+
+/**
+ * Статистика леммы по коллекции, в которой идет поиск (один сайт или все сайты).
+ */
+public record TermStatistics(int documentFrequency, long documentCount, double averageDocumentLength) {
+}
@@ -0,0 +1,32 @@
+package searchengine.services.search.scoring;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "search.scorer", havingValue = "tfidf")
+public class TfIdfScorer implements Scorer {
+
+    @Override
+    public float score(float termFrequency, int documentLength, TermStatistics term) {
+        if (termFrequency <= 0) {
+            return 0;
+        }
+        return (float) ((1 + Math.log(termFrequency)) * idf(term));
+    }
+
+    @Override
+    public float upperBound(float maxTermFrequency, TermStatistics term) {
+        return score(maxTermFrequency, 0, term);
+    }
+
+    @Override
+    public String toSql(String termFrequency, String documentLength, TermStatistics term) {
+        return "(CASE WHEN " + termFrequency + " <= 0 THEN 0 ELSE (1 + LN(" + termFrequency + ")) * " +
+                idf(term) + " END)";
+    }
+
+    private static double idf(TermStatistics term) {
+        return Math.log(1 + (double) term.documentCount() / Math.max(1, term.documentFrequency()));
+    }
+}
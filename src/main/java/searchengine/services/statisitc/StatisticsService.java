@@ -1,7 +1,15 @@
 package searchengine.services.statisitc;
 
+import searchengine.dto.statistics.CacheStatistics;
 import searchengine.dto.statistics.StatisticsResponse;
+import searchengine.dto.statistics.StorageStatistics;
+
+import java.util.List;
 
 public interface StatisticsService {
     StatisticsResponse getStatistics();
+
+    List<CacheStatistics> getCacheStatistics();
+
+    StorageStatistics getStorageStatistics();
 }
@@ -4,12 +4,18 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
+import searchengine.dto.statistics.CacheStatistics;
 import searchengine.dto.statistics.DetailedStatisticsItem;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
+import searchengine.dto.statistics.StorageStatistics;
 import searchengine.dto.statistics.TotalStatistics;
 import searchengine.entity.SiteEntity;
 import searchengine.services.managers.RepositoryManager;
+import searchengine.services.managers.VisitedUrlsManager;
+import searchengine.services.search.PositionalRescorer;
+import searchengine.services.search.SearchResultCache;
+import searchengine.utility.LemmaExecute;
 
 import java.time.ZoneOffset;
 import java.util.ArrayList;
@@ -21,6 +27,9 @@ public class StatisticsServiceImpl implements StatisticsService {
 
     private final SitesList sites;
     private final RepositoryManager repositoryManager;
+    private final SearchResultCache searchResultCache;
+    private final PositionalRescorer positionalRescorer;
+    private final VisitedUrlsManager visitedUrlsManager;
 
     @Override
     public StatisticsResponse getStatistics() {
@@ -41,6 +50,8 @@ public class StatisticsServiceImpl implements StatisticsService {
             int lemmas = repositoryManager.getCountLemmasFromRepository(siteEntity);
             item.setPages(pages);
             item.setLemmas(lemmas);
+            item.setVisitedUrls(visitedUrlsManager.getVisitedCount(siteEntity));
+            item.setVisitedUrlsBytes(visitedUrlsManager.getMemoryFootprintBytes(siteEntity));
             item.setStatus(siteEntity.getStatus().toString());
             String error = siteEntity.getLastError() != null ? siteEntity.getLastError().toString() : "";
             item.setError(error);
@@ -50,6 +61,8 @@ public class StatisticsServiceImpl implements StatisticsService {
             detailed.add(item);
         }
 
+        total.setVisitedUrlsBytes(visitedUrlsManager.getTotalMemoryFootprintBytes());
+
         StatisticsResponse response = new StatisticsResponse();
         StatisticsData data = new StatisticsData();
         data.setTotal(total);
@@ -58,4 +71,19 @@ public class StatisticsServiceImpl implements StatisticsService {
         response.setResult(true);
         return response;
     }
+
+    @Override
+    public List<CacheStatistics> getCacheStatistics() {
+        List<CacheStatistics> statistics = new ArrayList<>(LemmaExecute.getCacheStatistics());
+        statistics.add(searchResultCache.getStatistics());
+        statistics.add(positionalRescorer.getStatistics());
+        return statistics;
+    }
+
+    @Override
+    public StorageStatistics getStorageStatistics() {
+        StorageStatistics statistics = repositoryManager.getPageContentSizes();
+        statistics.setTables(repositoryManager.getTableSizes());
+        return statistics;
+    }
 }
@@ -0,0 +1,68 @@
+package searchengine.services.store;
+
+import searchengine.services.search.SearchDeadline;
+import searchengine.services.search.index.SearchHits;
+import searchengine.services.search.scoring.Scorer;
+import searchengine.services.search.scoring.TermStatistics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Хранилище индекса, из которого читаются ранги и документные частоты лемм при поиске.
+ * Запись индекса идет в PostgreSQL ({@link searchengine.services.managers.LemmaIndexBatchWriter}), а хранилище
+ * получает уже зафиксированные изменения через {@link #addPostings}, {@link #removePages}, {@link #removeSite}
+ * и {@link #clear}.
+ */
+public interface IndexStore {
+
+    /**
+     * Ранги лемм запроса на страницах, содержащих все леммы, по возрастанию id страницы. Когда срок поиска
+     * истекает, чтение останавливается, а строки, переданные до остановки, остаются у получателя.
+     *
+     * @param siteId сайт, которым ограничен поиск, или null для поиска по всем сайтам
+     * @return true, если прочитаны все строки, и false, если чтение остановлено по сроку
+     */
+    boolean findTermRanks(Collection<String> lemmas, Integer siteId, SearchDeadline deadline,
+                          Consumer<TermRank> consumer);
+
+    /**
+     * k лучших страниц, содержащих все леммы, по сумме {@link Scorer#score} лемм и общее число таких страниц.
+     * По умолчанию ранги читаются через {@link #findTermRanks} и оцениваются по мере чтения.
+     */
+    default SearchHits findTopPages(List<String> lemmas, Integer siteId, PageScoring scoring, int k,
+                                    SearchDeadline deadline) {
+        PageScoreAccumulator accumulator = new PageScoreAccumulator(scoring, k);
+        boolean complete = findTermRanks(lemmas, siteId, deadline, accumulator);
+        return accumulator.hits(complete);
+    }
+
+    /**
+     * Число страниц с леммой: по сайту или суммарно по всем сайтам.
+     */
+    Map<String, Integer> getDocumentFrequencies(Collection<String> lemmas, Integer siteId);
+
+    void addPostings(List<Posting> postings);
+
+    void removePages(Collection<Integer> pageIds);
+
+    void removeSite(int siteId);
+
+    void clear();
+
+    record TermRank(int pageId, int siteId, String lemma, float rank) {
+    }
+
+    /**
+     * @param terms          статистика лемм запроса; лемма без статистики не добавляет релевантности
+     * @param documentLength число лемм на странице по id страницы
+     */
+    record PageScoring(Scorer scorer, Map<String, TermStatistics> terms, IntUnaryOperator documentLength) {
+    }
+
+    record Posting(int siteId, String lemma, int pageId, float rank) {
+    }
+}
@@ -0,0 +1,56 @@
+package searchengine.services.store;
+
+import searchengine.services.search.index.SearchHits;
+import searchengine.services.search.index.TopKCollector;
+import searchengine.services.search.scoring.TermStatistics;
+
+import java.util.function.Consumer;
+
+/**
+ * Ранги приходят по возрастанию id страницы, поэтому страница оценивается, как только прочитаны все ее строки.
+ */
+final class PageScoreAccumulator implements Consumer<IndexStore.TermRank> {
+
+    private final IndexStore.PageScoring scoring;
+    private final TopKCollector collector;
+    private int pageId = -1;
+    private int siteId;
+    private float score;
+
+    PageScoreAccumulator(IndexStore.PageScoring scoring, int k) {
+        this.scoring = scoring;
+        this.collector = new TopKCollector(k);
+    }
+
+    @Override
+    public void accept(IndexStore.TermRank termRank) {
+        if (termRank.pageId() != pageId) {
+            offer();
+            pageId = termRank.pageId();
+            siteId = termRank.siteId();
+            score = 0;
+        }
+        TermStatistics term = scoring.terms().get(termRank.lemma());
+        if (term != null) {
+            score += scoring.scorer().score(termRank.rank(),
+                    scoring.documentLength().applyAsInt(termRank.pageId()), term);
+        }
+    }
+
+    /**
+     * Если чтение остановлено по сроку, последняя страница могла прийти не целиком и не учитывается.
+     */
+    SearchHits hits(boolean complete) {
+        if (complete) {
+            offer();
+        }
+        return collector.hits();
+    }
+
+    private void offer() {
+        if (pageId >= 0) {
+            collector.countHit();
+            collector.offer(pageId, siteId, score);
+        }
+    }
+}
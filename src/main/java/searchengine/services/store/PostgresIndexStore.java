@@ -0,0 +1,198 @@
+package searchengine.services.store;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.repository.IndexRepository;
+import searchengine.repository.LemmaRepository;
+import searchengine.services.search.SearchDeadline;
+import searchengine.services.search.index.ScoredPage;
+import searchengine.services.search.index.SearchHits;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Индекс читается из indexes_table и lemmas. Изменения уже записаны в БД в той же транзакции,
+ * поэтому уведомления о них ничего не делают.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PostgresIndexStore implements IndexStore {
+
+    private static final int TERM_RANKS_FETCH_SIZE = 1000;
+    private static final String SELECT_TERM_RANKS = "SELECT i.page_id, l.site_id, l.lemma, i.rank " +
+            "FROM sites_parsing.indexes_table i JOIN sites_parsing.lemmas l ON l.id = i.lemma_id " +
+            "WHERE %sl.lemma IN (%s) AND i.page_id IN (" +
+            "SELECT i2.page_id FROM sites_parsing.indexes_table i2 JOIN sites_parsing.lemmas l2 ON l2.id = i2.lemma_id " +
+            "WHERE %sl2.lemma IN (%s) GROUP BY i2.page_id HAVING COUNT(DISTINCT l2.lemma) = ?) " +
+            "ORDER BY i.page_id";
+
+    /**
+     * Релевантность считается в БД, и по сети передаются только k лучших страниц; total_hits — число
+     * всех страниц с леммами запроса.
+     */
+    private static final String SELECT_TOP_PAGES = "SELECT i.page_id, l.site_id, " +
+            "SUM(CASE %s ELSE 0 END) AS score, COUNT(*) OVER () AS total_hits " +
+            "FROM sites_parsing.indexes_table i JOIN sites_parsing.lemmas l ON l.id = i.lemma_id " +
+            "JOIN sites_parsing.page p ON p.id = i.page_id " +
+            "WHERE %sl.lemma IN (%s) GROUP BY i.page_id, l.site_id HAVING COUNT(DISTINCT l.lemma) = ? " +
+            "ORDER BY score DESC, i.page_id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+
+    /**
+     * Запрос отменяется в БД через {@link Statement#cancel()}, когда истекает срок поиска.
+     */
+    @Override
+    public boolean findTermRanks(Collection<String> lemmas, Integer siteId, SearchDeadline deadline,
+                                 Consumer<TermRank> consumer) {
+        List<String> distinctLemmas = List.copyOf(new LinkedHashSet<>(lemmas));
+        String in = String.join(", ", Collections.nCopies(distinctLemmas.size(), "?"));
+        String sql = siteId == null
+                ? String.format(SELECT_TERM_RANKS, "", in, "", in)
+                : String.format(SELECT_TERM_RANKS, "l.site_id = ? AND ", in, "l2.site_id = ? AND ", in);
+        List<Object> args = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            if (siteId != null) {
+                args.add(siteId);
+            }
+            args.addAll(distinctLemmas);
+        }
+        args.add(distinctLemmas.size());
+        return query(sql, args, deadline, rs -> consumer.accept(new TermRank(rs.getInt("page_id"),
+                rs.getInt("site_id"), rs.getString("lemma"), rs.getFloat("rank"))));
+    }
+
+    /**
+     * Релевантность каждой леммы считается выражением {@link searchengine.services.search.scoring.Scorer#toSql}
+     * по рангу индекса и page.length. Если срок поиска истек, возвращается пустая неполная выдача.
+     */
+    @Override
+    public SearchHits findTopPages(List<String> lemmas, Integer siteId, PageScoring scoring, int k,
+                                   SearchDeadline deadline) {
+        List<String> distinctLemmas = List.copyOf(new LinkedHashSet<>(lemmas));
+        StringBuilder cases = new StringBuilder("WHEN FALSE THEN 0");
+        List<Object> args = new ArrayList<>();
+        scoring.terms().forEach((lemma, term) -> {
+            if (distinctLemmas.contains(lemma)) {
+                cases.append(" WHEN l.lemma = ? THEN ").append(scoring.scorer().toSql("i.rank", "p.length", term));
+                args.add(lemma);
+            }
+        });
+        if (siteId != null) {
+            args.add(siteId);
+        }
+        args.addAll(distinctLemmas);
+        args.add(distinctLemmas.size());
+        args.add(Math.max(k, 1));
+        String sql = String.format(SELECT_TOP_PAGES, cases, siteId == null ? "" : "l.site_id = ? AND ",
+                String.join(", ", Collections.nCopies(distinctLemmas.size(), "?")));
+
+        List<ScoredPage> pages = new ArrayList<>();
+        int[] totalHits = {0};
+        boolean complete = query(sql, args, deadline, rs -> {
+            totalHits[0] = rs.getInt("total_hits");
+            if (pages.size() < k) {
+                pages.add(new ScoredPage(rs.getInt("page_id"), rs.getInt("site_id"), rs.getFloat("score")));
+            }
+        });
+        return complete ? new SearchHits(pages, totalHits[0]) : SearchHits.EMPTY;
+    }
+
+    @Override
+    public Map<String, Integer> getDocumentFrequencies(Collection<String> lemmas, Integer siteId) {
+        Set<String> distinctLemmas = new HashSet<>(lemmas);
+        List<LemmaRepository.LemmaFrequency> frequencies = siteId == null
+                ? lemmaRepository.sumFrequencies(distinctLemmas)
+                : lemmaRepository.findFrequencies(siteId, distinctLemmas);
+        Map<String, Integer> result = new HashMap<>();
+        frequencies.forEach(frequency -> result.put(frequency.getLemma(), frequency.getFrequency()));
+        return result;
+    }
+
+    @Override
+    public void addPostings(List<Posting> postings) {
+    }
+
+    @Override
+    public void removePages(Collection<Integer> pageIds) {
+    }
+
+    @Override
+    public void removeSite(int siteId) {
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    /**
+     * Читает строки запроса потоково в read-only транзакции; при истечении срока запрос отменяется в БД.
+     *
+     * @return true, если прочитаны все строки, и false, если чтение остановлено по сроку
+     */
+    private boolean query(String sql, List<Object> args, SearchDeadline deadline, RowCallbackHandler handler) {
+        if (deadline.shouldStop()) {
+            return false;
+        }
+        AtomicReference<Runnable> unregister = new AtomicReference<>(() -> { });
+        try {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            transaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                statement.setFetchSize(TERM_RANKS_FETCH_SIZE);
+                for (int i = 0; i < args.size(); i++) {
+                    statement.setObject(i + 1, args.get(i));
+                }
+                unregister.set(deadline.onExpire(() -> cancel(statement)));
+                return statement;
+            }, (RowCallbackHandler) rs -> {
+                if (deadline.shouldStop()) {
+                    throw new QueryTimeoutException("Срок поиска истек");
+                }
+                handler.processRow(rs);
+            }));
+            return true;
+        } catch (DataAccessException e) {
+            if (deadline.shouldStop()) {
+                log.debug("Чтение индекса остановлено по сроку поиска: {}", e.getMessage());
+                return false;
+            }
+            throw e;
+        } finally {
+            unregister.get().run();
+        }
+    }
+
+    private static void cancel(Statement statement) {
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            log.warn("Не удалось отменить запрос рангов: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package searchengine.services.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Файл сегмента, отображенный в память только для чтения. Формат пишет {@link SegmentWriter}:
+ * блоки вхождений лемм, словарь (сайт, лемма, число страниц, смещение блока), список страниц
+ * (id, сайт, число лемм) по возрастанию id и в конце смещения словаря и списка страниц.
+ * Блок вхождений: разности id страниц в varint и ранги float.
+ * Файл не меняется; страницы, удаленные после его записи, отмечаются в памяти и при чтении пропускаются,
+ * пока сегмент не будет переписан слиянием.
+ */
+final class Segment {
+
+    static final int MAGIC = 0x53454733;
+    static final Comparator<TermEntry> TERM_ORDER = Comparator.comparingInt(TermEntry::siteId)
+            .thenComparing(TermEntry::lemma);
+    private static final int PAGE_ENTRY_BYTES = 3 * Integer.BYTES;
+
+    private final String fileName;
+    private final long sequence;
+    private final long sizeBytes;
+    private final ByteBuffer buffer;
+    private final List<TermEntry> terms;
+    private final Map<String, List<TermEntry>> termsByLemma = new HashMap<>();
+    private final int pagesOffset;
+    private final int pageCount;
+    private final long postingCount;
+    private final Set<Integer> deletedPages = ConcurrentHashMap.newKeySet();
+    private final AtomicLong deletedPostings = new AtomicLong();
+
+    private Segment(String fileName, long sequence, long sizeBytes, ByteBuffer buffer, List<TermEntry> terms,
+                    int pagesOffset) {
+        this.fileName = fileName;
+        this.sequence = sequence;
+        this.sizeBytes = sizeBytes;
+        this.buffer = buffer;
+        this.terms = terms;
+        this.pageCount = buffer.getInt(pagesOffset);
+        this.pagesOffset = pagesOffset + Integer.BYTES;
+        terms.forEach(term -> termsByLemma.computeIfAbsent(term.lemma(), lemma -> new ArrayList<>(1)).add(term));
+        this.postingCount = terms.stream().mapToLong(TermEntry::count).sum();
+    }
+
+    static Segment open(Path path, long sequence) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 24 || size > Integer.MAX_VALUE) {
+                throw new IOException("Некорректный размер сегмента " + path + ": " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt((int) size - 4) != MAGIC) {
+                throw new IOException("Поврежденный сегмент " + path);
+            }
+            int position = buffer.getInt((int) size - 12);
+            int pagesOffset = buffer.getInt((int) size - 8);
+            int count = buffer.getInt(position);
+            position += 4;
+            List<TermEntry> terms = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int siteId = buffer.getInt(position);
+                byte[] lemma = new byte[buffer.getShort(position + 4) & 0xFFFF];
+                buffer.get(position + 6, lemma);
+                position += 6 + lemma.length;
+                terms.add(new TermEntry(siteId, new String(lemma, StandardCharsets.UTF_8),
+                        buffer.getInt(position), buffer.getInt(position + 4)));
+                position += 8;
+            }
+            return new Segment(path.getFileName().toString(), sequence, size, buffer, List.copyOf(terms), pagesOffset);
+        }
+    }
+
+    String fileName() {
+        return fileName;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    long sizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Число вхождений без удаленных страниц.
+     */
+    long livePostings() {
+        return postingCount - deletedPostings.get();
+    }
+
+    /**
+     * Доля вхождений удаленных страниц, которые слияние выбросит из файла.
+     */
+    double deletedRatio() {
+        return postingCount == 0 ? 0 : (double) deletedPostings.get() / postingCount;
+    }
+
+    /**
+     * Словарь сегмента в порядке {@link #TERM_ORDER}.
+     */
+    List<TermEntry> terms() {
+        return terms;
+    }
+
+    List<TermEntry> terms(String lemma) {
+        return termsByLemma.getOrDefault(lemma, List.of());
+    }
+
+    /**
+     * id страниц сегмента по возрастанию, включая удаленные.
+     */
+    int[] pageIds() {
+        int[] pageIds = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pageIds[i] = buffer.getInt(pagesOffset + i * PAGE_ENTRY_BYTES);
+        }
+        return pageIds;
+    }
+
+    /**
+     * Неудаленные страницы сегмента по возрастанию id: id в старших 32 битах, число лемм страницы в младших.
+     */
+    long[] livePages() {
+        long[] pages = new long[pageCount];
+        int count = 0;
+        for (int i = 0; i < pageCount; i++) {
+            int entry = pagesOffset + i * PAGE_ENTRY_BYTES;
+            int pageId = buffer.getInt(entry);
+            if (!isDeleted(pageId)) {
+                pages[count++] = (long) pageId << 32 | buffer.getInt(entry + 2 * Integer.BYTES);
+            }
+        }
+        return Arrays.copyOf(pages, count);
+    }
+
+    boolean isDeleted(int pageId) {
+        return !deletedPages.isEmpty() && deletedPages.contains(pageId);
+    }
+
+    Set<Integer> deletedPages() {
+        return deletedPages;
+    }
+
+    /**
+     * Отмечает страницу удаленной, если она есть в сегменте.
+     */
+    void delete(int pageId) {
+        int index = findPage(pageId);
+        if (index >= 0 && deletedPages.add(pageId)) {
+            deletedPostings.addAndGet(buffer.getInt(pagesOffset + index * PAGE_ENTRY_BYTES + 2 * Integer.BYTES));
+        }
+    }
+
+    void deleteSite(int siteId) {
+        for (int i = 0; i < pageCount; i++) {
+            int entry = pagesOffset + i * PAGE_ENTRY_BYTES;
+            if (buffer.getInt(entry + Integer.BYTES) == siteId) {
+                delete(buffer.getInt(entry));
+            }
+        }
+    }
+
+    TermPostings read(TermEntry term) {
+        int count = term.count();
+        int[] pageIds = new int[count];
+        float[] ranks = new float[count];
+        int[] position = {term.offset()};
+        int pageId = 0;
+        for (int i = 0; i < count; i++) {
+            pageId += readVarInt(position);
+            pageIds[i] = pageId;
+        }
+        for (int i = 0; i < count; i++) {
+            ranks[i] = buffer.getFloat(position[0]);
+            position[0] += Float.BYTES;
+        }
+        return new TermPostings(pageIds, ranks);
+    }
+
+    private int findPage(int pageId) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = buffer.getInt(pagesOffset + middle * PAGE_ENTRY_BYTES);
+            if (current < pageId) {
+                low = middle + 1;
+            } else if (current > pageId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int readVarInt(int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = buffer.get(position[0]++);
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+
+    record TermEntry(int siteId, String lemma, int count, int offset) {
+    }
+}
@@ -0,0 +1,932 @@
+package searchengine.services.store;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.IndexStoreSettings;
+import searchengine.services.search.SearchDeadline;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Локальная копия индекса в неизменяемых файлах-сегментах, отображенных в память. Каждая пачка
+ * зафиксированных вхождений становится новым сегментом, а прежние версии ее страниц в старых сегментах
+ * отмечаются удаленными. Удаления страниц и сайтов отмечаются в каждом сегменте, где эти страницы есть,
+ * и забываются вместе с сегментом, когда фоновое слияние переписывает его без них: соседние мелкие сегменты
+ * объединяются, а сегмент с большой долей удаленного переписывается отдельно.
+ * Состав хранилища и удаления записываются в файл manifest не при каждом изменении, а на шаге слияния;
+ * если manifest нет или включен {@code rebuild-on-start}, сегменты строятся заново из indexes_table.
+ * Сегменты, открытые из manifest, перед чтением сверяются с indexes_table по страницам и числу их лемм,
+ * потому что после аварийной остановки manifest может не знать о последних изменениях; при расхождении
+ * они тоже строятся заново. Пока копия не готова, чтение идет через {@link PostgresIndexStore}.
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(name = "persistence.index-store.type", havingValue = "segments")
+@RequiredArgsConstructor
+public class SegmentIndexStore implements IndexStore {
+
+    private static final String MANIFEST = "manifest";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int EXPORT_FETCH_SIZE = 10_000;
+    private static final String SELECT_POSTINGS = "SELECT l.site_id, l.lemma, i.page_id, i.rank " +
+            "FROM sites_parsing.indexes_table i JOIN sites_parsing.lemmas l ON l.id = i.lemma_id " +
+            "ORDER BY l.site_id, l.lemma, i.page_id";
+    private static final String SELECT_PAGE_POSTINGS = "SELECT page_id, count(*) AS postings " +
+            "FROM sites_parsing.indexes_table GROUP BY page_id ORDER BY page_id";
+    private static final int VERIFY_ATTEMPTS = 3;
+    private static final int DEADLINE_CHECK_MASK = 0xFF;
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final IndexStoreSettings settings;
+    private final PostgresIndexStore postgresIndexStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Object stateLock = new Object();
+    /**
+     * Номера сегментов, которые еще записываются, и число таких сегментов с каждым номером.
+     */
+    private final TreeMap<Long, Integer> pendingSequences = new TreeMap<>();
+    /**
+     * Удаления, сделанные, пока записывались сегменты; применяются к ним при публикации.
+     */
+    private final List<PendingRemoval> pendingRemovals = new ArrayList<>();
+    private volatile SegmentState state = SegmentState.EMPTY;
+    private volatile boolean ready;
+    private volatile boolean rebuilding;
+    /**
+     * Сегменты открыты из manifest и получают изменения, но чтение идет из БД, пока они не сверены с ней.
+     */
+    private volatile boolean verifying;
+    /**
+     * Число изменений содержимого сегментов; по нему сверка узнает, что индекс менялся во время подсчета.
+     */
+    private long changes;
+    private long sequence;
+    private long nextFileId;
+    private long clearedSequence;
+    private boolean rebuildRequired;
+    private boolean manifestDirty;
+    private Path directory;
+    private ScheduledExecutorService merger;
+
+    @PostConstruct
+    public void start() throws IOException {
+        directory = Path.of(settings.getDirectory());
+        Files.createDirectories(directory);
+        if (!settings.isRebuildOnStart() && Files.exists(directory.resolve(MANIFEST))) {
+            try {
+                loadManifest();
+                verifying = true;
+                log.info("Открыто сегментов индекса: {}, {} МБ", state.segments().size(), totalBytes() / MEGABYTE);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Не удалось открыть сегменты индекса, они будут построены заново: {}", e.getMessage());
+                rebuildRequired = true;
+            }
+        } else {
+            rebuildRequired = true;
+        }
+        merger = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "index-segment-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        merger.scheduleWithFixedDelay(this::maintain, settings.getMergeCheckSeconds(),
+                settings.getMergeCheckSeconds(), TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        merger.shutdownNow();
+        synchronized (stateLock) {
+            writeDirtyManifest();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        Thread loader = new Thread(rebuildRequired ? this::rebuild : this::verify, "index-segment-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Строит сегменты из indexes_table. Вхождения, зафиксированные во время чтения, приходят через
+     * {@link #addPostings} в сегменты с большими номерами, а удаления скрывают прочитанное до них.
+     */
+    public void rebuild() {
+        long startedAt = System.nanoTime();
+        List<Segment> previous;
+        synchronized (stateLock) {
+            ready = false;
+            verifying = false;
+            rebuilding = true;
+            previous = state.segments();
+            state = SegmentState.EMPTY;
+            clearedSequence = sequence;
+        }
+        deleteFiles(previous);
+        long bootstrapSequence = reserveSequence();
+        try {
+            Files.deleteIfExists(directory.resolve(MANIFEST));
+            List<Segment> segments = exportFromDatabase(bootstrapSequence);
+            publish(segments, List.of(), Map.of());
+            synchronized (stateLock) {
+                ready = true;
+                rebuildRequired = false;
+                writeManifestQuietly();
+            }
+            log.info("Сегменты индекса построены из БД за {} мс: {} сегментов, {} МБ",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), segments.size(),
+                    totalBytes() / MEGABYTE);
+        } catch (Exception e) {
+            fail("Не удалось построить сегменты индекса", e);
+        } finally {
+            rebuilding = false;
+            releaseSequence(bootstrapSequence);
+        }
+    }
+
+    /**
+     * Сверяет открытые из manifest сегменты с indexes_table и открывает их для чтения или строит заново.
+     * Если во время подсчета индекс менялся, сверка повторяется. Пачка, уже зафиксированная в БД,
+     * но еще не дошедшая до сегментов, дает расхождение и лишнюю пересборку, но не неверный индекс.
+     */
+    private void verify() {
+        try {
+            for (int attempt = 0; attempt < VERIFY_ATTEMPTS; attempt++) {
+                long changesBefore;
+                long[] pages;
+                synchronized (stateLock) {
+                    changesBefore = changes;
+                    pages = livePages();
+                }
+                String mismatch = compareWithDatabase(pages);
+                synchronized (stateLock) {
+                    if (changes != changesBefore) {
+                        continue;
+                    }
+                    if (mismatch == null) {
+                        verifying = false;
+                        ready = true;
+                        log.info("Сегменты индекса сверены с БД: {} страниц", pages.length);
+                        return;
+                    }
+                }
+                log.warn("Сегменты индекса расходятся с БД ({}), они будут построены заново", mismatch);
+                rebuild();
+                return;
+            }
+            log.warn("Индекс менялся во время сверки сегментов с БД, они будут построены заново");
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сверить сегменты индекса с БД, они будут построены заново: {}", e.getMessage());
+        }
+        rebuild();
+    }
+
+    /**
+     * Неудаленные страницы всех сегментов в формате {@link Segment#livePages()} по возрастанию id.
+     */
+    private long[] livePages() {
+        List<long[]> bySegment = new ArrayList<>();
+        int total = 0;
+        for (Segment segment : state.segments()) {
+            long[] pages = segment.livePages();
+            bySegment.add(pages);
+            total += pages.length;
+        }
+        long[] pages = new long[total];
+        int position = 0;
+        for (long[] segmentPages : bySegment) {
+            System.arraycopy(segmentPages, 0, pages, position, segmentPages.length);
+            position += segmentPages.length;
+        }
+        Arrays.sort(pages);
+        return pages;
+    }
+
+    /**
+     * Первое расхождение страниц и числа их лемм между сегментами и indexes_table или null.
+     */
+    private String compareWithDatabase(long[] pages) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        return transaction.execute(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_PAGE_POSTINGS);
+            statement.setFetchSize(EXPORT_FETCH_SIZE);
+            return statement;
+        }, (ResultSetExtractor<String>) rs -> {
+            int index = 0;
+            while (rs.next()) {
+                int pageId = rs.getInt("page_id");
+                int postings = rs.getInt("postings");
+                if (index < pages.length && (int) (pages[index] >>> 32) < pageId) {
+                    return "страница " + (int) (pages[index] >>> 32) + " есть только в сегментах";
+                }
+                if (index == pages.length || (int) (pages[index] >>> 32) > pageId) {
+                    return "страница " + pageId + " есть только в БД";
+                }
+                if ((int) pages[index] != postings) {
+                    return "у страницы " + pageId + " лемм в сегментах " + (int) pages[index] + ", в БД " + postings;
+                }
+                index++;
+            }
+            return index < pages.length ? "страница " + (int) (pages[index] >>> 32) + " есть только в сегментах" : null;
+        }));
+    }
+
+    @Override
+    public boolean findTermRanks(Collection<String> lemmas, Integer siteId, SearchDeadline deadline,
+                                 Consumer<TermRank> consumer) {
+        if (!ready) {
+            return postgresIndexStore.findTermRanks(lemmas, siteId, deadline, consumer);
+        }
+        SegmentState current = state;
+        List<String> distinctLemmas = List.copyOf(new LinkedHashSet<>(lemmas));
+        List<Map<Integer, TermPostings>> postingsByLemma = new ArrayList<>(distinctLemmas.size());
+        Set<Integer> sites = null;
+        for (String lemma : distinctLemmas) {
+            if (deadline.shouldStop()) {
+                return false;
+            }
+            Map<Integer, TermPostings> bySite = termPostings(current, lemma, siteId);
+            postingsByLemma.add(bySite);
+            if (sites == null) {
+                sites = new TreeSet<>(bySite.keySet());
+            } else {
+                sites.retainAll(bySite.keySet());
+            }
+        }
+        if (sites == null) {
+            return true;
+        }
+        List<TermRank> rows = new ArrayList<>();
+        boolean complete = true;
+        int[] found = new int[distinctLemmas.size()];
+        sites:
+        for (int site : sites) {
+            List<TermPostings> postings = postingsByLemma.stream().map(bySite -> bySite.get(site)).toList();
+            TermPostings rarest = postings.stream().min(Comparator.comparingInt(TermPostings::size)).orElseThrow();
+            for (int i = 0; i < rarest.size(); i++) {
+                if ((i & DEADLINE_CHECK_MASK) == 0 && deadline.shouldStop()) {
+                    complete = false;
+                    break sites;
+                }
+                int pageId = rarest.pageIds()[i];
+                boolean matches = true;
+                for (int t = 0; t < postings.size() && matches; t++) {
+                    found[t] = Arrays.binarySearch(postings.get(t).pageIds(), pageId);
+                    matches = found[t] >= 0;
+                }
+                if (matches) {
+                    for (int t = 0; t < postings.size(); t++) {
+                        rows.add(new TermRank(pageId, site, distinctLemmas.get(t), postings.get(t).ranks()[found[t]]));
+                    }
+                }
+            }
+        }
+        rows.sort(Comparator.comparingInt(TermRank::pageId));
+        rows.forEach(consumer);
+        return complete;
+    }
+
+    @Override
+    public Map<String, Integer> getDocumentFrequencies(Collection<String> lemmas, Integer siteId) {
+        if (!ready) {
+            return postgresIndexStore.getDocumentFrequencies(lemmas, siteId);
+        }
+        SegmentState current = state;
+        Map<String, Integer> result = new HashMap<>();
+        for (String lemma : new HashSet<>(lemmas)) {
+            int frequency = termPostings(current, lemma, siteId).values().stream()
+                    .mapToInt(TermPostings::size)
+                    .sum();
+            if (frequency > 0) {
+                result.put(lemma, frequency);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void addPostings(List<Posting> postings) {
+        if (postings.isEmpty()) {
+            return;
+        }
+        if (!(ready || verifying || rebuilding)) {
+            markStale();
+            return;
+        }
+        Map<TermKey, Map<Integer, Posting>> byTerm = new LinkedHashMap<>();
+        for (Posting posting : postings) {
+            byTerm.computeIfAbsent(new TermKey(posting.siteId(), posting.lemma()),
+                    term -> new TreeMap<>()).put(posting.pageId(), posting);
+        }
+        long segmentSequence = reserveSequence();
+        try (SegmentWriter writer = new SegmentWriter(nextSegmentPath())) {
+            for (Map.Entry<TermKey, Map<Integer, Posting>> term : byTerm.entrySet()) {
+                Collection<Posting> pages = term.getValue().values();
+                int[] pageIds = new int[pages.size()];
+                float[] ranks = new float[pages.size()];
+                int i = 0;
+                for (Posting posting : pages) {
+                    pageIds[i] = posting.pageId();
+                    ranks[i++] = posting.rank();
+                }
+                writer.addTerm(term.getKey().siteId(), term.getKey().lemma(), new TermPostings(pageIds, ranks));
+            }
+            Path path = writer.finish();
+            publish(List.of(Segment.open(path, segmentSequence)), List.of(), Map.of());
+        } catch (IOException | RuntimeException e) {
+            fail("Не удалось записать сегмент индекса", e);
+        } finally {
+            releaseSequence(segmentSequence);
+        }
+    }
+
+    @Override
+    public void removePages(Collection<Integer> pageIds) {
+        if (pageIds.isEmpty()) {
+            return;
+        }
+        synchronized (stateLock) {
+            for (Segment segment : state.segments()) {
+                pageIds.forEach(segment::delete);
+            }
+            if (!pendingSequences.isEmpty()) {
+                pendingRemovals.add(new PendingRemoval(sequence, List.copyOf(pageIds), null));
+            }
+            changes++;
+            manifestDirty = true;
+        }
+    }
+
+    @Override
+    public void removeSite(int siteId) {
+        synchronized (stateLock) {
+            for (Segment segment : state.segments()) {
+                segment.deleteSite(siteId);
+            }
+            if (!pendingSequences.isEmpty()) {
+                pendingRemovals.add(new PendingRemoval(sequence, List.of(), siteId));
+            }
+            changes++;
+            manifestDirty = true;
+        }
+    }
+
+    @Override
+    public void clear() {
+        List<Segment> previous;
+        synchronized (stateLock) {
+            previous = state.segments();
+            state = SegmentState.EMPTY;
+            clearedSequence = sequence;
+            pendingRemovals.clear();
+            changes++;
+            writeManifestQuietly();
+        }
+        deleteFiles(previous);
+    }
+
+    /**
+     * Вхождения леммы по сайтам без удаленных страниц.
+     */
+    private Map<Integer, TermPostings> termPostings(SegmentState current, String lemma, Integer siteId) {
+        Map<Integer, List<TermPostings>> postingsBySite = new HashMap<>();
+        Map<Integer, List<Segment>> sourcesBySite = new HashMap<>();
+        List<Segment> segments = current.segments();
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            Segment segment = segments.get(s);
+            for (Segment.TermEntry term : segment.terms(lemma)) {
+                if (siteId != null && term.siteId() != siteId) {
+                    continue;
+                }
+                postingsBySite.computeIfAbsent(term.siteId(), site -> new ArrayList<>())
+                        .add(segment.read(term));
+                sourcesBySite.computeIfAbsent(term.siteId(), site -> new ArrayList<>()).add(segment);
+            }
+        }
+        Map<Integer, TermPostings> result = new HashMap<>();
+        postingsBySite.forEach((site, postings) -> {
+            TermPostings combined = TermPostings.combine(postings, sourcesBySite.get(site));
+            if (combined.size() > 0) {
+                result.put(site, combined);
+            }
+        });
+        return result;
+    }
+
+    private List<Segment> exportFromDatabase(long segmentSequence) throws IOException {
+        long maxBytes = maxSegmentBytes();
+        List<Segment> segments = new ArrayList<>();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        try {
+            transaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(SELECT_POSTINGS);
+                statement.setFetchSize(EXPORT_FETCH_SIZE);
+                return statement;
+            }, (ResultSetExtractor<Void>) rs -> {
+                try {
+                    TermBuffer term = new TermBuffer();
+                    SegmentWriter writer = null;
+                    try {
+                        while (rs.next()) {
+                            int site = rs.getInt("site_id");
+                            String lemma = rs.getString("lemma");
+                            if (!term.is(site, lemma)) {
+                                if (writer == null) {
+                                    writer = new SegmentWriter(nextSegmentPath());
+                                }
+                                term.writeTo(writer);
+                                if (writer.size() >= maxBytes) {
+                                    segments.add(Segment.open(writer.finish(), segmentSequence));
+                                    writer = null;
+                                }
+                                term.reset(site, lemma);
+                            }
+                            term.add(rs.getInt("page_id"), rs.getFloat("rank"));
+                        }
+                        if (writer == null) {
+                            writer = new SegmentWriter(nextSegmentPath());
+                        }
+                        term.writeTo(writer);
+                        segments.add(Segment.open(writer.finish(), segmentSequence));
+                    } finally {
+                        if (writer != null) {
+                            writer.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            }));
+        } catch (UncheckedIOException e) {
+            deleteFiles(segments);
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            deleteFiles(segments);
+            throw e;
+        }
+        return segments;
+    }
+
+    /**
+     * Шаг фонового обслуживания: слияние сегментов и запись manifest, если состав или удаления изменились.
+     */
+    private void maintain() {
+        try {
+            if (ready) {
+                merge();
+            }
+        } catch (Exception e) {
+            log.error("Не удалось слить сегменты индекса", e);
+        }
+        synchronized (stateLock) {
+            writeDirtyManifest();
+        }
+    }
+
+    /**
+     * Сливает сегменты, пока их не больше {@code merge-factor} и ни в одном доля удаленного не достигает
+     * {@code purge-deleted-percent}, так что отставание, накопленное за время индексации, разбирается
+     * за один шаг, а не по одному окну за шаг.
+     */
+    private void merge() throws IOException {
+        while (ready && !Thread.currentThread().isInterrupted() && mergeOnce()) {
+            log.debug("Сегментов индекса после слияния: {}", state.segments().size());
+        }
+    }
+
+    /**
+     * Сливает подряд идущие по номеру сегменты, чье число превышает {@code merge-factor}. Из окон
+     * выбирается то, где меньше всего живых данных: так не переписываются крупные сегменты, а окна
+     * с удаленными страницами сливаются раньше. Если окно из {@code merge-factor} сегментов превышает
+     * предельный размер, берется окно меньше. Результат получает наибольший номер окна. Если сегментов
+     * немного, отдельно переписывается сегмент, где доля удаленного не меньше {@code purge-deleted-percent}.
+     *
+     * @return true, если сегменты были слиты
+     */
+    private boolean mergeOnce() throws IOException {
+        List<Segment> window;
+        Map<Segment, Set<Integer>> deletedBefore = new HashMap<>();
+        synchronized (stateLock) {
+            window = selectMergeWindow(state.segments());
+            window.forEach(segment -> deletedBefore.put(segment, Set.copyOf(segment.deletedPages())));
+        }
+        if (window.isEmpty()) {
+            return false;
+        }
+        long startedAt = System.nanoTime();
+        long mergedSequence = window.get(window.size() - 1).sequence();
+        List<Segment> added = new ArrayList<>(1);
+        try (SegmentWriter writer = new SegmentWriter(nextSegmentPath())) {
+            PriorityQueue<int[]> cursors = new PriorityQueue<>((a, b) -> Segment.TERM_ORDER.compare(
+                    window.get(a[0]).terms().get(a[1]), window.get(b[0]).terms().get(b[1])));
+            for (int s = 0; s < window.size(); s++) {
+                if (!window.get(s).terms().isEmpty()) {
+                    cursors.add(new int[]{s, 0});
+                }
+            }
+            List<int[]> sameTerm = new ArrayList<>();
+            while (!cursors.isEmpty()) {
+                sameTerm.clear();
+                sameTerm.add(cursors.poll());
+                Segment.TermEntry term = window.get(sameTerm.get(0)[0]).terms().get(sameTerm.get(0)[1]);
+                while (!cursors.isEmpty() && Segment.TERM_ORDER.compare(term,
+                        window.get(cursors.peek()[0]).terms().get(cursors.peek()[1])) == 0) {
+                    sameTerm.add(cursors.poll());
+                }
+                sameTerm.sort(Comparator.comparingInt((int[] cursor) -> cursor[0]).reversed());
+                List<TermPostings> postings = new ArrayList<>(sameTerm.size());
+                List<Segment> sources = new ArrayList<>(sameTerm.size());
+                for (int[] cursor : sameTerm) {
+                    Segment segment = window.get(cursor[0]);
+                    postings.add(segment.read(segment.terms().get(cursor[1])));
+                    sources.add(segment);
+                    if (++cursor[1] < segment.terms().size()) {
+                        cursors.add(cursor);
+                    }
+                }
+                writer.addTerm(term.siteId(), term.lemma(), TermPostings.combine(postings, sources));
+            }
+            Segment merged = Segment.open(writer.finish(), mergedSequence);
+            if (merged.terms().isEmpty()) {
+                deleteFiles(List.of(merged));
+            } else {
+                added.add(merged);
+            }
+        }
+        if (!publish(added, window, deletedBefore)) {
+            return false;
+        }
+        log.info("Слито сегментов индекса: {} за {} мс, {} МБ -> {} МБ", window.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt),
+                window.stream().mapToLong(Segment::sizeBytes).sum() / MEGABYTE,
+                added.stream().mapToLong(Segment::sizeBytes).sum() / MEGABYTE);
+        return true;
+    }
+
+    private List<Segment> selectMergeWindow(List<Segment> segments) {
+        int mergeFactor = Math.max(2, settings.getMergeFactor());
+        if (segments.size() <= mergeFactor) {
+            return selectPurge(segments);
+        }
+        long maxBytes = maxSegmentBytes();
+        for (int size = mergeFactor; size >= 2; size--) {
+            int best = -1;
+            long bestBytes = Long.MAX_VALUE;
+            for (int start = 0; start + size <= segments.size(); start++) {
+                long bytes = 0;
+                for (int i = start; i < start + size; i++) {
+                    bytes += liveBytes(segments.get(i));
+                }
+                if (bytes <= maxBytes && bytes < bestBytes) {
+                    best = start;
+                    bestBytes = bytes;
+                }
+            }
+            if (best >= 0) {
+                return segments.subList(best, best + size);
+            }
+        }
+        return selectPurge(segments);
+    }
+
+    private List<Segment> selectPurge(List<Segment> segments) {
+        double threshold = settings.getPurgeDeletedPercent() / 100.0;
+        return segments.stream()
+                .filter(segment -> segment.deletedRatio() > 0 && segment.deletedRatio() >= threshold)
+                .max(Comparator.comparingDouble(Segment::deletedRatio))
+                .map(List::of)
+                .orElse(List.of());
+    }
+
+    private static long liveBytes(Segment segment) {
+        return (long) (segment.sizeBytes() * (1 - segment.deletedRatio()));
+    }
+
+    /**
+     * Заменяет в текущем снимке сегменты removed на added. Сегменты, записанные до {@link #clear()},
+     * и результат слияния сегментов, которые уже удалены, выбрасываются. Результат слияния наследует удаления,
+     * сделанные во время слияния, а новая пачка — удаления, сделанные во время ее записи; кроме того,
+     * страницы новой пачки отмечаются удаленными в более старых сегментах и наоборот.
+     * После слияния manifest пишется сразу, до удаления исходных файлов, на которые ссылался прежний.
+     *
+     * @param deletedBefore удаленные страницы сливаемых сегментов на начало слияния
+     */
+    private boolean publish(List<Segment> added, List<Segment> removed, Map<Segment, Set<Integer>> deletedBefore) {
+        List<Segment> discarded = new ArrayList<>();
+        boolean published;
+        synchronized (stateLock) {
+            List<Segment> segments = new ArrayList<>(state.segments());
+            published = segments.containsAll(removed);
+            if (published) {
+                segments.removeAll(removed);
+                discarded.addAll(removed);
+                for (Segment segment : added) {
+                    if (segment.sequence() <= clearedSequence) {
+                        discarded.add(segment);
+                    } else if (removed.isEmpty()) {
+                        applyPendingRemovals(segment);
+                        replaceOlderVersions(segment, segments);
+                        segments.add(segment);
+                    } else {
+                        for (Segment source : removed) {
+                            source.deletedPages().stream()
+                                    .filter(pageId -> !deletedBefore.get(source).contains(pageId))
+                                    .forEach(segment::delete);
+                        }
+                        segments.add(segment);
+                    }
+                }
+                segments.sort(Comparator.comparingLong(Segment::sequence));
+                state = state.withSegments(segments);
+                changes++;
+                manifestDirty = true;
+                if (!removed.isEmpty()) {
+                    writeManifestQuietly();
+                }
+            } else {
+                discarded.addAll(added);
+            }
+        }
+        deleteFiles(discarded);
+        return published;
+    }
+
+    private void applyPendingRemovals(Segment segment) {
+        for (PendingRemoval removal : pendingRemovals) {
+            if (removal.sequence() >= segment.sequence()) {
+                removal.pageIds().forEach(segment::delete);
+                if (removal.siteId() != null) {
+                    segment.deleteSite(removal.siteId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Страница живет только в самом новом сегменте, где она есть, поэтому число живых вхождений
+     * совпадает с числом строк indexes_table. Сегменты пересборки имеют один номер и делят между собой
+     * леммы, а не страницы, поэтому друг друга не вытесняют.
+     */
+    private static void replaceOlderVersions(Segment added, List<Segment> segments) {
+        int[] addedPages = null;
+        for (Segment other : segments) {
+            if (other.sequence() < added.sequence()) {
+                if (addedPages == null) {
+                    addedPages = added.pageIds();
+                }
+                for (int pageId : addedPages) {
+                    other.delete(pageId);
+                }
+            } else if (other.sequence() > added.sequence()) {
+                for (int pageId : other.pageIds()) {
+                    added.delete(pageId);
+                }
+            }
+        }
+    }
+
+    private long reserveSequence() {
+        synchronized (stateLock) {
+            long reserved = ++sequence;
+            pendingSequences.merge(reserved, 1, Integer::sum);
+            return reserved;
+        }
+    }
+
+    private void releaseSequence(long reserved) {
+        synchronized (stateLock) {
+            pendingSequences.computeIfPresent(reserved, (key, count) -> count > 1 ? count - 1 : null);
+            if (pendingSequences.isEmpty()) {
+                pendingRemovals.clear();
+            } else {
+                long oldestPending = pendingSequences.firstKey();
+                pendingRemovals.removeIf(removal -> removal.sequence() < oldestPending);
+            }
+        }
+    }
+
+    private Path nextSegmentPath() {
+        synchronized (stateLock) {
+            return directory.resolve(String.format("segment-%012d%s", ++nextFileId, SEGMENT_SUFFIX));
+        }
+    }
+
+    private long maxSegmentBytes() {
+        return Math.min(settings.getMaxSegmentMegabytes() * MEGABYTE, SegmentWriter.MAX_BYTES * 2 / 3);
+    }
+
+    private long totalBytes() {
+        return state.segments().stream().mapToLong(Segment::sizeBytes).sum();
+    }
+
+    /**
+     * Копия перестает получать изменения, поэтому поиск возвращается к БД, а manifest удаляется,
+     * чтобы при следующем запуске сегменты были построены заново.
+     */
+    private void fail(String message, Exception e) {
+        ready = false;
+        verifying = false;
+        log.error("{}; индекс будет читаться из БД до пересборки сегментов", message, e);
+        markStale();
+    }
+
+    /**
+     * Вызывается, когда изменение индекса не попало в сегменты: manifest удаляется, чтобы при следующем
+     * запуске они не открылись без этого изменения.
+     */
+    private void markStale() {
+        synchronized (stateLock) {
+            if (rebuildRequired) {
+                return;
+            }
+            rebuildRequired = true;
+            try {
+                Files.deleteIfExists(directory.resolve(MANIFEST));
+            } catch (IOException e) {
+                log.warn("Не удалось удалить {}: {}", MANIFEST, e.getMessage());
+            }
+        }
+    }
+
+    private void writeDirtyManifest() {
+        if (manifestDirty) {
+            writeManifestQuietly();
+        }
+    }
+
+    /**
+     * Пока копия не готова, manifest не пишется: после сбоя на середине пересборки он описывал бы неполный индекс.
+     * Сегменты на сверке уже полные, и изменения, примененные к ним, сохраняются.
+     */
+    private void writeManifestQuietly() {
+        if (!(ready || verifying)) {
+            return;
+        }
+        try {
+            writeManifest();
+        } catch (IOException e) {
+            fail("Не удалось записать " + MANIFEST + " сегментов индекса", e);
+        }
+    }
+
+    /**
+     * Формат: строки {@code sequence N}, {@code next-file N}, {@code segment НОМЕР ФАЙЛ}
+     * и {@code deleted ФАЙЛ ID...} со страницами, удаленными из сегмента после его записи.
+     */
+    private void writeManifest() throws IOException {
+        SegmentState current = state;
+        List<String> lines = new ArrayList<>();
+        lines.add("sequence " + sequence);
+        lines.add("next-file " + nextFileId);
+        current.segments().forEach(segment -> lines.add("segment " + segment.sequence() + " " + segment.fileName()));
+        for (Segment segment : current.segments()) {
+            if (!segment.deletedPages().isEmpty()) {
+                StringBuilder line = new StringBuilder("deleted ").append(segment.fileName());
+                segment.deletedPages().forEach(pageId -> line.append(' ').append(pageId));
+                lines.add(line.toString());
+            }
+        }
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        manifestDirty = false;
+    }
+
+    private void loadManifest() throws IOException {
+        Map<String, Segment> segmentsByFile = new HashMap<>();
+        for (String line : Files.readAllLines(directory.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ");
+            switch (parts[0]) {
+                case "sequence" -> sequence = Long.parseLong(parts[1]);
+                case "next-file" -> nextFileId = Long.parseLong(parts[1]);
+                case "segment" -> segmentsByFile.put(parts[2],
+                        Segment.open(directory.resolve(parts[2]), Long.parseLong(parts[1])));
+                case "deleted" -> {
+                    Segment segment = segmentsByFile.get(parts[1]);
+                    if (segment == null) {
+                        throw new IOException("Удаления для неизвестного сегмента " + parts[1]);
+                    }
+                    for (int i = 2; i < parts.length; i++) {
+                        segment.delete(Integer.parseInt(parts[i]));
+                    }
+                }
+                default -> throw new IOException("Неизвестная строка " + MANIFEST + ": " + line);
+            }
+        }
+        List<Segment> segments = new ArrayList<>(segmentsByFile.values());
+        segments.sort(Comparator.comparingLong(Segment::sequence));
+        state = new SegmentState(List.copyOf(segments));
+        clearedSequence = 0;
+        Set<String> live = new HashSet<>();
+        segments.forEach(segment -> live.add(segment.fileName()));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*")) {
+            for (Path file : files) {
+                if (!live.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void deleteFiles(List<Segment> segments) {
+        for (Segment segment : segments) {
+            try {
+                Files.deleteIfExists(directory.resolve(segment.fileName()));
+            } catch (IOException e) {
+                log.warn("Не удалось удалить сегмент {}: {}", segment.fileName(), e.getMessage());
+            }
+        }
+    }
+
+    private record TermKey(int siteId, String lemma) {
+    }
+
+    /**
+     * @param sequence номер последнего выданного сегмента на момент удаления: удаление касается
+     *                 записываемых сегментов с номером не больше него
+     * @param siteId   удаленный сайт или null, если удалены только страницы pageIds
+     */
+    private record PendingRemoval(long sequence, List<Integer> pageIds, Integer siteId) {
+    }
+
+    /**
+     * Вхождения одной леммы сайта, накопленные при чтении indexes_table.
+     */
+    private static final class TermBuffer {
+
+        private int siteId;
+        private String lemma;
+        private int size;
+        private int[] pageIds = new int[64];
+        private float[] ranks = new float[64];
+
+        boolean is(int siteId, String lemma) {
+            return this.lemma != null && this.siteId == siteId && this.lemma.equals(lemma);
+        }
+
+        void reset(int siteId, String lemma) {
+            this.siteId = siteId;
+            this.lemma = lemma;
+            this.size = 0;
+        }
+
+        void add(int pageId, float rank) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            pageIds[size] = pageId;
+            ranks[size++] = rank;
+        }
+
+        void writeTo(SegmentWriter writer) throws IOException {
+            if (lemma != null && size > 0) {
+                writer.addTerm(siteId, lemma, new TermPostings(Arrays.copyOf(pageIds, size),
+                        Arrays.copyOf(ranks, size)));
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package searchengine.services.store;
+
+import java.util.List;
+
+/**
+ * Неизменяемый снимок состава хранилища. Удаленные страницы отмечаются в самих сегментах.
+ *
+ * @param segments сегменты по возрастанию номера
+ */
+record SegmentState(List<Segment> segments) {
+
+    static final SegmentState EMPTY = new SegmentState(List.of());
+
+    SegmentState withSegments(List<Segment> segments) {
+        return new SegmentState(List.copyOf(segments));
+    }
+}
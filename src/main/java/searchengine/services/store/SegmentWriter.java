@@ -0,0 +1,133 @@
+package searchengine.services.store;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Пишет сегмент во временный файл и после {@link #finish()} переименовывает его в итоговый,
+ * поэтому в каталоге не бывает недописанных сегментов. Каждая пара (сайт, лемма) добавляется один раз.
+ */
+final class SegmentWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Смещения в словаре хранятся в int, а весь файл отображается в один буфер.
+     */
+    static final long MAX_BYTES = 3L << 29;
+
+    private final Path target;
+    private final Path temp;
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private final List<Segment.TermEntry> terms = new ArrayList<>();
+    /**
+     * Сайт и число лемм каждой страницы сегмента.
+     */
+    private final Map<Integer, int[]> pages = new HashMap<>();
+    private long written;
+    private boolean finished;
+
+    SegmentWriter(Path target) throws IOException {
+        this.target = target;
+        this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.file = new FileOutputStream(temp.toFile());
+        this.out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE));
+        writeInt(Segment.MAGIC);
+    }
+
+    long size() {
+        return written;
+    }
+
+    void addTerm(int siteId, String lemma, TermPostings postings) throws IOException {
+        if (postings.size() == 0) {
+            return;
+        }
+        if (written > MAX_BYTES) {
+            throw new IOException("Сегмент " + target + " превысил допустимый размер");
+        }
+        terms.add(new Segment.TermEntry(siteId, lemma, postings.size(), (int) written));
+        int previous = 0;
+        for (int pageId : postings.pageIds()) {
+            writeVarInt(pageId - previous);
+            previous = pageId;
+            pages.computeIfAbsent(pageId, id -> new int[]{siteId, 0})[1]++;
+        }
+        for (float rank : postings.ranks()) {
+            out.writeFloat(rank);
+            written += Float.BYTES;
+        }
+    }
+
+    /**
+     * Дописывает словарь и список страниц, сбрасывает файл на диск и переименовывает его в итоговое имя.
+     */
+    Path finish() throws IOException {
+        int dictionaryOffset = (int) written;
+        terms.sort(Segment.TERM_ORDER);
+        writeInt(terms.size());
+        for (Segment.TermEntry term : terms) {
+            byte[] lemma = term.lemma().getBytes(StandardCharsets.UTF_8);
+            writeInt(term.siteId());
+            out.writeShort(lemma.length);
+            out.write(lemma);
+            written += Short.BYTES + lemma.length;
+            writeInt(term.count());
+            writeInt(term.offset());
+        }
+        int pagesOffset = (int) written;
+        writeInt(pages.size());
+        for (Map.Entry<Integer, int[]> page : new TreeMap<>(pages).entrySet()) {
+            writeInt(page.getKey());
+            writeInt(page.getValue()[0]);
+            writeInt(page.getValue()[1]);
+        }
+        writeInt(dictionaryOffset);
+        writeInt(pagesOffset);
+        writeInt(Segment.MAGIC);
+        if (written > Integer.MAX_VALUE) {
+            throw new IOException("Сегмент " + target + " превысил допустимый размер");
+        }
+        out.flush();
+        file.getFD().sync();
+        out.close();
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+        return target;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            out.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.writeInt(value);
+        written += Integer.BYTES;
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+            written++;
+        }
+        out.write(value);
+        written++;
+    }
+}
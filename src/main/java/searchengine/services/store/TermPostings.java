@@ -0,0 +1,61 @@
+package searchengine.services.store;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Вхождения леммы сайта: id страниц по возрастанию и ранги.
+ */
+record TermPostings(int[] pageIds, float[] ranks) {
+
+    static final TermPostings EMPTY = new TermPostings(new int[0], new float[0]);
+
+    int size() {
+        return pageIds.length;
+    }
+
+    /**
+     * Объединение вхождений одной леммы из нескольких сегментов, от нового к старому. Страница берется
+     * из самого нового сегмента, где она есть; страницы, отмеченные удаленными в своем сегменте, пропускаются.
+     */
+    static TermPostings combine(List<TermPostings> newestFirst, List<Segment> sources) {
+        int total = 0;
+        for (TermPostings postings : newestFirst) {
+            total += postings.size();
+        }
+        int[] pageIds = new int[total];
+        float[] ranks = new float[total];
+        int[] cursors = new int[newestFirst.size()];
+        int size = 0;
+        while (true) {
+            int next = Integer.MAX_VALUE;
+            int source = -1;
+            for (int i = 0; i < newestFirst.size(); i++) {
+                TermPostings postings = newestFirst.get(i);
+                if (cursors[i] < postings.size() && postings.pageIds()[cursors[i]] < next) {
+                    next = postings.pageIds()[cursors[i]];
+                    source = i;
+                }
+            }
+            if (source < 0) {
+                break;
+            }
+            TermPostings postings = newestFirst.get(source);
+            if (!sources.get(source).isDeleted(next)) {
+                pageIds[size] = next;
+                ranks[size] = postings.ranks()[cursors[source]];
+                size++;
+            }
+            for (int i = 0; i < newestFirst.size(); i++) {
+                TermPostings other = newestFirst.get(i);
+                if (cursors[i] < other.size() && other.pageIds()[cursors[i]] == next) {
+                    cursors[i]++;
+                }
+            }
+        }
+        if (size == 0) {
+            return EMPTY;
+        }
+        return new TermPostings(Arrays.copyOf(pageIds, size), Arrays.copyOf(ranks, size));
+    }
+}
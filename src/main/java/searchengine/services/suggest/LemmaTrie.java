@@ -0,0 +1,216 @@
+package searchengine.services.suggest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Неизменяемое префиксное дерево лемм с весами (документной частотой) в плоских массивах.
+ * Узлы лежат в порядке обхода в ширину, поэтому дети узла идут подряд и отсортированы по символу,
+ * а переход по символу — бинарный поиск. Для каждого узла хранится максимальный вес в поддереве,
+ * что позволяет доставать k самых частых продолжений префикса, не обходя все поддерево.
+ */
+public final class LemmaTrie {
+
+    public static final LemmaTrie EMPTY = build(List.of(), new int[0]);
+
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] weights;
+    private final int[] maxWeights;
+    private final int lemmaCount;
+
+    private LemmaTrie(char[] labels, int[] firstChild, int[] childCount, int[] weights, int[] maxWeights,
+                      int lemmaCount) {
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.weights = weights;
+        this.maxWeights = maxWeights;
+        this.lemmaCount = lemmaCount;
+    }
+
+    /**
+     * @param lemmas  различные леммы, отсортированные по {@link String#compareTo}
+     * @param weights веса лемм в том же порядке, больше нуля
+     */
+    public static LemmaTrie build(List<String> lemmas, int[] weights) {
+        int capacity = 16;
+        char[] labels = new char[capacity];
+        int[] firstChild = new int[capacity];
+        int[] childCount = new int[capacity];
+        int[] nodeWeights = new int[capacity];
+        int size = 1;
+
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        queue.add(new int[]{0, 0, lemmas.size(), 0});
+        while (!queue.isEmpty()) {
+            int[] range = queue.poll();
+            int node = range[0];
+            int from = range[1];
+            int to = range[2];
+            int depth = range[3];
+            if (from < to && lemmas.get(from).length() == depth) {
+                nodeWeights[node] = weights[from];
+                from++;
+            }
+            firstChild[node] = size;
+            int children = 0;
+            while (from < to) {
+                char label = lemmas.get(from).charAt(depth);
+                int end = from + 1;
+                while (end < to && lemmas.get(end).charAt(depth) == label) {
+                    end++;
+                }
+                if (size == labels.length) {
+                    capacity = labels.length << 1;
+                    labels = Arrays.copyOf(labels, capacity);
+                    firstChild = Arrays.copyOf(firstChild, capacity);
+                    childCount = Arrays.copyOf(childCount, capacity);
+                    nodeWeights = Arrays.copyOf(nodeWeights, capacity);
+                }
+                labels[size] = label;
+                queue.add(new int[]{size, from, end, depth + 1});
+                size++;
+                children++;
+                from = end;
+            }
+            childCount[node] = children;
+        }
+
+        int[] maxWeights = Arrays.copyOf(nodeWeights, size);
+        for (int node = size - 1; node >= 0; node--) {
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+                maxWeights[node] = Math.max(maxWeights[node], maxWeights[child]);
+            }
+        }
+        return new LemmaTrie(Arrays.copyOf(labels, size), Arrays.copyOf(firstChild, size),
+                Arrays.copyOf(childCount, size), Arrays.copyOf(nodeWeights, size), maxWeights, lemmas.size());
+    }
+
+    public int lemmaCount() {
+        return lemmaCount;
+    }
+
+    public int nodeCount() {
+        return labels.length;
+    }
+
+    /**
+     * До {@code limit} лемм, начинающихся с {@code prefix}, по убыванию веса.
+     */
+    public List<Completion> complete(String prefix, int limit) {
+        int node = find(prefix);
+        if (node < 0 || limit <= 0) {
+            return List.of();
+        }
+        List<Completion> completions = new ArrayList<>(limit);
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(Comparator.comparingInt(Candidate::weight).reversed());
+        queue.add(new Candidate(node, prefix, maxWeights[node], false));
+        while (!queue.isEmpty() && completions.size() < limit) {
+            Candidate candidate = queue.poll();
+            if (candidate.complete()) {
+                completions.add(new Completion(candidate.text(), candidate.weight()));
+                continue;
+            }
+            int current = candidate.node();
+            if (weights[current] > 0) {
+                queue.add(new Candidate(current, candidate.text(), weights[current], true));
+            }
+            for (int child = firstChild[current]; child < firstChild[current] + childCount[current]; child++) {
+                queue.add(new Candidate(child, candidate.text() + labels[child], maxWeights[child], false));
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * До {@code limit} лемм на расстоянии Левенштейна не больше {@code maxDistance} от {@code word}: сначала
+     * ближайшие, при равном расстоянии — более частые. Обход дерева с построчным пересчетом матрицы расстояний
+     * отсекает поддеревья, где минимум строки уже больше {@code maxDistance}, что эквивалентно обходу
+     * автомата Левенштейна.
+     */
+    public List<FuzzyMatch> fuzzy(String word, int maxDistance, int limit) {
+        if (limit <= 0 || word.isEmpty()) {
+            return List.of();
+        }
+        List<FuzzyMatch> matches = new ArrayList<>();
+        int[] firstRow = new int[word.length() + 1];
+        Arrays.setAll(firstRow, i -> i);
+        ArrayDeque<FuzzyState> stack = new ArrayDeque<>();
+        for (int child = firstChild[0]; child < firstChild[0] + childCount[0]; child++) {
+            stack.push(new FuzzyState(child, String.valueOf(labels[child]), firstRow));
+        }
+        while (!stack.isEmpty()) {
+            FuzzyState state = stack.pop();
+            int node = state.node();
+            char label = labels[node];
+            int[] previous = state.previousRow();
+            int[] row = new int[previous.length];
+            row[0] = previous[0] + 1;
+            int rowMin = row[0];
+            for (int i = 1; i < row.length; i++) {
+                int substitution = previous[i - 1] + (word.charAt(i - 1) == label ? 0 : 1);
+                row[i] = Math.min(substitution, Math.min(row[i - 1] + 1, previous[i] + 1));
+                rowMin = Math.min(rowMin, row[i]);
+            }
+            if (rowMin > maxDistance) {
+                continue;
+            }
+            int distance = row[row.length - 1];
+            if (weights[node] > 0 && distance <= maxDistance) {
+                matches.add(new FuzzyMatch(state.text(), distance, weights[node]));
+            }
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+                stack.push(new FuzzyState(child, state.text() + labels[child], row));
+            }
+        }
+        matches.sort(Comparator.comparingInt(FuzzyMatch::distance)
+                .thenComparing(Comparator.comparingInt(FuzzyMatch::weight).reversed()));
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    private int find(String prefix) {
+        int node = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            int child = childWith(node, prefix.charAt(i));
+            if (child < 0) {
+                return -1;
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    private int childWith(int node, char label) {
+        int low = firstChild[node];
+        int high = low + childCount[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (labels[middle] < label) {
+                low = middle + 1;
+            } else if (labels[middle] > label) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public record Completion(String lemma, int weight) {
+    }
+
+    public record FuzzyMatch(String lemma, int distance, int weight) {
+    }
+
+    private record FuzzyState(int node, String text, int[] previousRow) {
+    }
+
+    private record Candidate(int node, String text, int weight, boolean complete) {
+    }
+}
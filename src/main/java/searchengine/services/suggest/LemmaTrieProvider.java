@@ -0,0 +1,114 @@
+package searchengine.services.suggest;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.services.managers.IndexGeneration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Текущее {@link LemmaTrie}, построенное по таблице lemmas. Дерево пересобирается в фоне, когда поколение
+ * индекса перестало меняться (индексация закончилась), и подменяется атомарно, поэтому читатели
+ * не обращаются к БД и не ждут сборки.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LemmaTrieProvider {
+
+    private static final String SELECT_LEMMA_WEIGHTS =
+            "SELECT lemma, SUM(frequency) AS frequency FROM sites_parsing.lemmas GROUP BY lemma HAVING SUM(frequency) > 0";
+
+    private final SearchSettings searchSettings;
+    private final JdbcTemplate jdbcTemplate;
+    private final IndexGeneration indexGeneration;
+
+    private final AtomicReference<LemmaTrie> trie = new AtomicReference<>(LemmaTrie.EMPTY);
+    private volatile long builtGeneration = -1;
+    private volatile long observedGeneration = -1;
+    private ScheduledExecutorService scheduler;
+
+    public LemmaTrie current() {
+        return trie.get();
+    }
+
+    @PostConstruct
+    public void startScheduler() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "lemma-trie-builder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stopScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleRebuild() {
+        if (!searchSettings.getSuggest().isEnabled() && !searchSettings.getFuzzy().isEnabled()) {
+            return;
+        }
+        long interval = searchSettings.getSuggest().getRebuildCheckSeconds();
+        scheduler.execute(this::rebuild);
+        scheduler.scheduleWithFixedDelay(this::rebuildIfIdle, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Пересборка запускается, если поколение индекса изменилось с прошлой сборки и не менялось
+     * с прошлой проверки, чтобы не перестраивать дерево на каждой пачке записей во время обхода.
+     */
+    private void rebuildIfIdle() {
+        long generation = indexGeneration.current();
+        long previous = observedGeneration;
+        observedGeneration = generation;
+        if (generation != builtGeneration && generation == previous) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        long generation = indexGeneration.current();
+        long startedAt = System.nanoTime();
+        try {
+            List<String> lemmas = new ArrayList<>();
+            List<Integer> frequencies = new ArrayList<>();
+            jdbcTemplate.query(SELECT_LEMMA_WEIGHTS, (RowCallbackHandler) rs -> {
+                lemmas.add(rs.getString("lemma"));
+                frequencies.add((int) Math.min(Integer.MAX_VALUE, rs.getLong("frequency")));
+            });
+            Integer[] order = new Integer[lemmas.size()];
+            Arrays.setAll(order, i -> i);
+            Arrays.sort(order, (left, right) -> lemmas.get(left).compareTo(lemmas.get(right)));
+            List<String> sortedLemmas = new ArrayList<>(order.length);
+            int[] weights = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedLemmas.add(lemmas.get(order[i]));
+                weights[i] = frequencies.get(order[i]);
+            }
+            LemmaTrie built = LemmaTrie.build(sortedLemmas, weights);
+            trie.set(built);
+            builtGeneration = generation;
+            log.info("Дерево подсказок перестроено: {} лемм, {} узлов за {} мс", built.lemmaCount(),
+                    built.nodeCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        } catch (Exception e) {
+            log.error("Не удалось перестроить дерево подсказок", e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package searchengine.services.suggest;
+
+import org.springframework.http.ResponseEntity;
+import searchengine.dto.search.ApiSuggestResponse;
+
+public interface SuggestService {
+    ResponseEntity<ApiSuggestResponse> suggest(String query, int limit);
+}
@@ -0,0 +1,63 @@
+package searchengine.services.suggest;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.ApiSuggestResponse;
+import searchengine.dto.search.ApiSuggestion;
+import searchengine.utility.WordTokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Подсказки по префиксу из {@link LemmaTrie}, которое держит {@link LemmaTrieProvider}. Запрос не обращается к БД.
+ */
+@Service
+@RequiredArgsConstructor
+public class SuggestServiceImpl implements SuggestService {
+
+    private final SearchSettings searchSettings;
+    private final LemmaTrieProvider lemmaTrieProvider;
+
+    @Override
+    public ResponseEntity<ApiSuggestResponse> suggest(String query, int limit) {
+        ApiSuggestResponse response = new ApiSuggestResponse();
+        response.setResult(true);
+        response.setData(List.of());
+        String prefix = normalize(query);
+        if (prefix.isEmpty()) {
+            return ResponseEntity.ok(response);
+        }
+        int size = Math.min(Math.max(limit, 0), searchSettings.getSuggest().getMaxLimit());
+        List<ApiSuggestion> suggestions = new ArrayList<>(size);
+        for (LemmaTrie.Completion completion : lemmaTrieProvider.current().complete(prefix, size)) {
+            ApiSuggestion suggestion = new ApiSuggestion();
+            suggestion.setText(completion.lemma());
+            suggestion.setFrequency(completion.weight());
+            suggestions.add(suggestion);
+        }
+        response.setData(suggestions);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Дополняется последнее слово запроса, приведенное к нижнему регистру, как при индексации.
+     */
+    private static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < query.length(); i++) {
+            char c = WordTokenizer.normalize(query.charAt(i));
+            if (c == 0) {
+                prefix.setLength(0);
+            } else {
+                prefix.append(c);
+            }
+        }
+        return prefix.toString();
+    }
+}
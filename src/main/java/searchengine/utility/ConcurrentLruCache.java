@@ -0,0 +1,159 @@
+package searchengine.utility;
+
+import searchengine.dto.statistics.CacheStatistics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Ограниченный LRU-кэш, разбитый на сегменты со своей блокировкой. Считает попадания, промахи и вытеснения.
+ */
+public class ConcurrentLruCache<K, V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final int capacity;
+    private final Segment<K, V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentLruCache(int capacity) {
+        this.capacity = capacity;
+        this.segments = new Segment[SEGMENTS];
+        int segmentCapacity = Math.max(1, capacity / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(segmentCapacity, evictions);
+        }
+    }
+
+    public V get(K key) {
+        V value = segmentFor(key).getValue(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Значение, не прошедшее проверку (устаревшее), удаляется и считается промахом.
+     */
+    public V getIfValid(K key, Predicate<? super V> valid) {
+        Segment<K, V> segment = segmentFor(key);
+        V value = segment.getValue(key);
+        if (value != null && !valid.test(value)) {
+            segment.removeValue(key);
+            value = null;
+        }
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        segmentFor(key).putValue(key, value);
+    }
+
+    /**
+     * Значение вычисляется вне блокировки сегмента: при гонке его могут посчитать дважды,
+     * зато медленная загрузка не задерживает другие ключи сегмента.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void remove(K key) {
+        segmentFor(key).removeValue(key);
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clearValues();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.sizeValues();
+        }
+        return size;
+    }
+
+    public CacheStatistics statistics(String name) {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        CacheStatistics statistics = new CacheStatistics();
+        statistics.setName(name);
+        statistics.setSize(size());
+        statistics.setCapacity(capacity);
+        statistics.setHits(hitCount);
+        statistics.setMisses(missCount);
+        statistics.setEvictions(evictions.sum());
+        statistics.setHitRate(hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount));
+        return statistics;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+
+        private final int maxSize;
+        private final LongAdder evictions;
+
+        private Segment(int maxSize, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized V getValue(K key) {
+            return get(key);
+        }
+
+        private synchronized void putValue(K key, V value) {
+            put(key, value);
+        }
+
+        private synchronized void removeValue(K key) {
+            remove(key);
+        }
+
+        private synchronized void clearValues() {
+            clear();
+        }
+
+        private synchronized int sizeValues() {
+            return size();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package searchengine.utility;
+
+import lombok.experimental.UtilityClass;
+import org.jsoup.nodes.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+@UtilityClass
+public class HashUtil {
+
+    /**
+     * SHA-256 заголовка и видимого текста страницы: изменения разметки, не влияющие на текст,
+     * не приводят к повторной лемматизации.
+     */
+    public static String contentHash(Document document) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(document.title().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(document.body().text().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
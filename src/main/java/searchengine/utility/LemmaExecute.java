@@ -2,81 +2,88 @@ package searchengine.utility;
 
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.jsoup.nodes.Document;
+import searchengine.dto.indexing.PageText;
+import searchengine.dto.statistics.CacheStatistics;
+import searchengine.utility.morphology.EnglishLemmatizer;
+import searchengine.utility.morphology.Lemmatizer;
+import searchengine.utility.morphology.RussianLemmatizer;
+import searchengine.utility.morphology.WordForm;
 
-import java.io.IOException;
 import java.util.*;
 
+/**
+ * Точка входа лемматизации для индексации и поиска. Токенизатор выдает слова одного алфавита,
+ * поэтому язык определяется по первой букве слова и слово уходит в морфологию этого языка.
+ */
 @Slf4j
 @UtilityClass
 public class LemmaExecute {
 
-    private static LuceneMorphology morphology;
-    private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ"};
+    private static final List<Lemmatizer> lemmatizers = List.of(new RussianLemmatizer(), new EnglishLemmatizer());
 
-    private static void initMorphology() {
-        if (morphology == null) {
-            try {
-                morphology = new RussianLuceneMorphology();
-            } catch (IOException e) {
-                log.error("Error initializing LuceneMorphology", e);
-                throw new RuntimeException("Failed to initialize LuceneMorphology", e);
-            }
-        }
+    public static HashMap<String, Integer> getLemmaMap(String html) {
+        return getLemmaMap(html, null);
     }
 
-    public static HashMap<String, Integer> getLemmaMap(String html) {
-        initMorphology();
+    /**
+     * То же, что {@link #getLemmaMap(String)}, но дополнительно записывает позиции слов в {@code tokenMap}.
+     */
+    public static HashMap<String, Integer> getLemmaMap(String text, TokenMap.Builder tokenMap) {
         HashMap<String, Integer> lemmaMap = new HashMap<>();
-        String[] words = arrayRussianWords(html);
-
-        for (String word : words) {
-            if (word.isBlank()) {
-                continue;
+        WordTokenizer.tokenize(text, (word, start, end) -> {
+            WordForm form = wordForm(word);
+            if (form != null && form.isIndexable()) {
+                lemmaMap.merge(form.getLemma(), 1, Integer::sum);
+                if (tokenMap != null) {
+                    tokenMap.add(form.getLemma(), start, end);
+                }
             }
-            List<String> wordInfo = morphology.getMorphInfo(word);
-            if (anyWordBaseBelongToParticle(wordInfo)) {
-                continue;
-            }
-            List<String> normalizedWords = morphology.getNormalForms(word);
-            if (normalizedWords.isEmpty()) {
-                continue;
-            }
-            String normalizedWord = normalizedWords.get(0);
-            lemmaMap.merge(normalizedWord, 1, Integer::sum);
-        }
+        });
         return lemmaMap;
     }
 
+    /**
+     * Разбор страницы при индексации: заголовок, видимый текст, леммы и карта позиций слов.
+     */
+    public static PageText getPageText(Document document) {
+        String text = document.body() != null ? document.body().text() : "";
+        TokenMap.Builder tokenMap = new TokenMap.Builder();
+        HashMap<String, Integer> lemmaMap = getLemmaMap(text, tokenMap);
+        return new PageText(document.title(), text, lemmaMap, tokenMap.build());
+    }
+
     public static List<String> getLemmaList(String text) {
-        initMorphology();
-        String[] words = arrayRussianWords(text);
-        log.info("Слова из запроса: {}", Arrays.toString(words));
         List<String> lemmaSet = new ArrayList<>();
+        getLemmaGroups(text).forEach(lemmaSet::addAll);
+        return lemmaSet;
+    }
 
-        for (String word : words) {
-            if (word.isEmpty()) {
-                continue;
+    /**
+     * Нормальные формы каждого значимого слова текста по порядку: одна группа на слово.
+     */
+    public static List<List<String>> getLemmaGroups(String text) {
+        List<List<String>> groups = new ArrayList<>();
+        WordTokenizer.tokenize(text, (word, start, end) -> {
+            WordForm form = wordForm(word);
+            if (form != null && !form.isParticle() && !form.getNormalForms().isEmpty()) {
+                groups.add(form.getNormalForms());
             }
-            List<String> wordForms = morphology.getNormalForms(word);
-            log.info("Нормальные формы для слова {}: {}", word, wordForms);
-            if (anyWordBaseBelongToParticle(wordForms)) {
-                lemmaSet.add(word);
-                continue;
-            }
-            lemmaSet.addAll(wordForms);
-        }
-        log.info("Леммы из запроса: {}", lemmaSet);
-        return lemmaSet;
+        });
+        return groups;
     }
 
-    private static String[] arrayRussianWords(String text) {
-        return text.toLowerCase(Locale.ROOT).replaceAll("[^а-я\\s]", "").trim().split("\\s+");
+    public static List<CacheStatistics> getCacheStatistics() {
+        return lemmatizers.stream().map(Lemmatizer::getCacheStatistics).toList();
     }
 
-    private static boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
-        return wordBaseForms.stream().anyMatch(form -> Arrays.stream(particlesNames).anyMatch(form::contains));
+    private static WordForm wordForm(String word) {
+        char first = word.charAt(0);
+        for (Lemmatizer lemmatizer : lemmatizers) {
+            if (lemmatizer.supports(first)) {
+                return lemmatizer.analyze(word);
+            }
+        }
+        return null;
     }
 }
-
@@ -0,0 +1,147 @@
+package searchengine.utility;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Компактная карта «позиция слова в тексте → лемма» для подсветки сниппетов без повторного разбора страницы.
+ * Формат: число лемм, леммы в UTF-8 (длина + байты) в порядке первого появления, затем число слов и для
+ * каждого слова varint-тройка: отступ начала от конца предыдущего слова, длина слова, номер леммы.
+ */
+public final class TokenMap {
+
+    private TokenMap() {
+    }
+
+    public static final class Builder {
+
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final VarIntWriter lemmas = new VarIntWriter();
+        private final VarIntWriter tokens = new VarIntWriter();
+        private int tokenCount;
+        private int previousEnd;
+
+        public void add(String lemma, int start, int end) {
+            Integer ordinal = ordinals.get(lemma);
+            if (ordinal == null) {
+                ordinal = ordinals.size();
+                ordinals.put(lemma, ordinal);
+                byte[] bytes = lemma.getBytes(StandardCharsets.UTF_8);
+                lemmas.write(bytes.length);
+                lemmas.write(bytes);
+            }
+            tokens.write(start - previousEnd);
+            tokens.write(end - start);
+            tokens.write(ordinal);
+            previousEnd = end;
+            tokenCount++;
+        }
+
+        public byte[] build() {
+            VarIntWriter out = new VarIntWriter();
+            out.write(ordinals.size());
+            out.write(lemmas.toByteArray());
+            out.write(tokenCount);
+            out.write(tokens.toByteArray());
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Слова, чьи леммы входят в {@code lemmas}, по возрастанию позиции: тройки (начало, конец, номер леммы запроса).
+     */
+    public static int[] find(byte[] map, Collection<String> lemmas) {
+        if (map == null || map.length == 0 || lemmas.isEmpty()) {
+            return new int[0];
+        }
+        Map<String, Integer> queryOrdinals = new HashMap<>();
+        for (String lemma : lemmas) {
+            queryOrdinals.putIfAbsent(lemma, queryOrdinals.size());
+        }
+        VarIntReader in = new VarIntReader(map);
+        int lemmaCount = in.read();
+        int[] toQuery = new int[lemmaCount];
+        boolean anyMatch = false;
+        for (int i = 0; i < lemmaCount; i++) {
+            int length = in.read();
+            String lemma = new String(map, in.position(), length, StandardCharsets.UTF_8);
+            in.skip(length);
+            toQuery[i] = queryOrdinals.getOrDefault(lemma, -1);
+            anyMatch |= toQuery[i] >= 0;
+        }
+        if (!anyMatch) {
+            return new int[0];
+        }
+        int tokenCount = in.read();
+        int[] matches = new int[16];
+        int size = 0;
+        int end = 0;
+        for (int i = 0; i < tokenCount; i++) {
+            int start = end + in.read();
+            end = start + in.read();
+            int queryOrdinal = toQuery[in.read()];
+            if (queryOrdinal >= 0) {
+                if (size + 3 > matches.length) {
+                    matches = Arrays.copyOf(matches, matches.length << 1);
+                }
+                matches[size++] = start;
+                matches[size++] = end;
+                matches[size++] = queryOrdinal;
+            }
+        }
+        return Arrays.copyOf(matches, size);
+    }
+
+    /**
+     * Порядковые номера слов в тексте для каждой из {@code lemmas}, встречающихся на странице, по возрастанию.
+     * Номер слова — его место в карте, так что соседние слова текста имеют соседние номера.
+     */
+    public static Map<String, int[]> positions(byte[] map, Collection<String> lemmas) {
+        Map<String, int[]> result = new HashMap<>();
+        if (map == null || map.length == 0 || lemmas.isEmpty()) {
+            return result;
+        }
+        VarIntReader in = new VarIntReader(map);
+        int lemmaCount = in.read();
+        String[] wanted = new String[lemmaCount];
+        int[] counts = new int[lemmaCount];
+        boolean anyMatch = false;
+        for (int i = 0; i < lemmaCount; i++) {
+            int length = in.read();
+            String lemma = new String(map, in.position(), length, StandardCharsets.UTF_8);
+            in.skip(length);
+            if (lemmas.contains(lemma)) {
+                wanted[i] = lemma;
+                anyMatch = true;
+            }
+        }
+        if (!anyMatch) {
+            return result;
+        }
+        int tokenCount = in.read();
+        int[][] positions = new int[lemmaCount][];
+        for (int i = 0; i < tokenCount; i++) {
+            in.read();
+            in.read();
+            int ordinal = in.read();
+            if (wanted[ordinal] != null) {
+                int[] list = positions[ordinal];
+                if (list == null) {
+                    list = positions[ordinal] = new int[4];
+                } else if (counts[ordinal] == list.length) {
+                    list = positions[ordinal] = Arrays.copyOf(list, list.length << 1);
+                }
+                list[counts[ordinal]++] = i;
+            }
+        }
+        for (int i = 0; i < lemmaCount; i++) {
+            if (positions[i] != null) {
+                result.put(wanted[i], Arrays.copyOf(positions[i], counts[i]));
+            }
+        }
+        return result;
+    }
+}
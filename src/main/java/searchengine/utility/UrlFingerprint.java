@@ -0,0 +1,51 @@
+package searchengine.utility;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.Locale;
+
+@UtilityClass
+public class UrlFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * 64-битный отпечаток URL после нормализации: без фрагмента и завершающего слеша,
+     * схема и хост в нижнем регистре.
+     */
+    public static long of(String url) {
+        String normalized = normalize(url);
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < normalized.length(); i++) {
+            hash ^= normalized.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    public static String normalize(String url) {
+        int end = url.indexOf('#');
+        if (end < 0) {
+            end = url.length();
+        }
+        while (end > 0 && url.charAt(end - 1) == '/') {
+            end--;
+        }
+        int schemeEnd = url.indexOf("://");
+        int hostEnd = schemeEnd < 0 ? -1 : url.indexOf('/', schemeEnd + 3);
+        if (hostEnd < 0 || hostEnd > end) {
+            hostEnd = end;
+        }
+        return url.substring(0, hostEnd).toLowerCase(Locale.ROOT) + url.substring(hostEnd, end);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,34 @@
+package searchengine.utility;
+
+/**
+ * Чтение чисел, записанных {@link VarIntWriter}.
+ */
+public final class VarIntReader {
+
+    private final byte[] data;
+    private int position;
+
+    public VarIntReader(byte[] data) {
+        this.data = data;
+    }
+
+    public int read() {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = data[position++];
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public void skip(int bytes) {
+        position += bytes;
+    }
+}
@@ -0,0 +1,49 @@
+package searchengine.utility;
+
+import java.util.Arrays;
+
+/**
+ * Запись целых неотрицательных чисел в формате varint: по 7 бит в байте, старший бит — признак продолжения.
+ */
+public final class VarIntWriter {
+
+    private byte[] buffer;
+    private int size;
+
+    public VarIntWriter() {
+        this(64);
+    }
+
+    public VarIntWriter(int capacity) {
+        buffer = new byte[Math.max(capacity, 1)];
+    }
+
+    public void write(int value) {
+        while ((value & ~0x7F) != 0) {
+            append((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        append((byte) value);
+    }
+
+    public void write(byte[] bytes) {
+        ensureCapacity(size + bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void append(byte value) {
+        ensureCapacity(size + 1);
+        buffer[size++] = value;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length << 1));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package searchengine.utility;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Разбивает текст на слова за один проход: буквы приводятся к нижнему регистру (ё → е)
+ * в общий буфер, остальные символы разделяют слова. Строка создается только на каждое слово.
+ * Кириллица и латиница не смешиваются в одном слове: смена алфавита тоже разделяет слова.
+ * Слова длиннее {@link #MAX_WORD_LENGTH} (base64, хеши, склеенные идентификаторы) пропускаются:
+ * словами они не являются, а lemmas.lemma ограничена VARCHAR(255).
+ */
+@UtilityClass
+public class WordTokenizer {
+
+    public static final int MAX_WORD_LENGTH = 64;
+
+    public interface TokenConsumer {
+        void accept(String word, int start, int end);
+    }
+
+    public static void tokenize(CharSequence text, TokenConsumer consumer) {
+        char[] buffer = new char[MAX_WORD_LENGTH];
+        int length = 0;
+        int start = 0;
+        boolean cyrillic = false;
+        for (int i = 0, n = text.length(); i <= n; i++) {
+            char c = i < n ? normalize(text.charAt(i)) : 0;
+            if (length > 0 && (c == 0 || isCyrillic(c) != cyrillic)) {
+                if (length <= MAX_WORD_LENGTH) {
+                    consumer.accept(new String(buffer, 0, length), start, i);
+                }
+                length = 0;
+            }
+            if (c != 0) {
+                if (length == 0) {
+                    start = i;
+                    cyrillic = isCyrillic(c);
+                }
+                if (length < MAX_WORD_LENGTH) {
+                    buffer[length] = c;
+                }
+                length++;
+            }
+        }
+    }
+
+    /**
+     * Буква в нижнем регистре или 0, если символ не входит в слово.
+     */
+    public static char normalize(char c) {
+        if (c >= 'а' && c <= 'я') {
+            return c;
+        }
+        if (c >= 'А' && c <= 'Я') {
+            return (char) (c + ('а' - 'А'));
+        }
+        if (c == 'ё' || c == 'Ё') {
+            return 'е';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return 0;
+    }
+
+    private static boolean isCyrillic(char c) {
+        return c >= 'а' && c <= 'я';
+    }
+}
@@ -0,0 +1,57 @@
+package searchengine.utility.morphology;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.morphology.LuceneMorphology;
+import searchengine.dto.statistics.CacheStatistics;
+import searchengine.utility.ConcurrentLruCache;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Общая часть лемматизаторов на Lucene morphology: разбор словоформы с кэшем на язык.
+ * Словарь морфологии после загрузки только читается, поэтому один экземпляр разделяется всеми потоками.
+ */
+@Slf4j
+abstract class CachingLemmatizer implements Lemmatizer {
+
+    private final String cacheName;
+    private final String[] particlesNames;
+    private final ConcurrentLruCache<String, WordForm> wordCache;
+
+    CachingLemmatizer(String cacheName, int cacheSize, String... particlesNames) {
+        this.cacheName = cacheName;
+        this.particlesNames = particlesNames;
+        this.wordCache = new ConcurrentLruCache<>(cacheSize);
+    }
+
+    protected abstract LuceneMorphology morphology();
+
+    @Override
+    public WordForm analyze(String word) {
+        return wordCache.computeIfAbsent(word, this::parse);
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics() {
+        return wordCache.statistics(cacheName);
+    }
+
+    private WordForm parse(String word) {
+        LuceneMorphology morphology = morphology();
+        try {
+            if (anyWordBaseBelongToParticle(morphology.getMorphInfo(word))) {
+                return WordForm.PARTICLE;
+            }
+            List<String> normalForms = morphology.getNormalForms(word);
+            return normalForms.isEmpty() ? WordForm.UNKNOWN : new WordForm(normalForms.get(0), List.copyOf(normalForms), false);
+        } catch (RuntimeException e) {
+            log.debug("Не удалось разобрать слово {}: {}", word, e.getMessage());
+            return WordForm.UNKNOWN;
+        }
+    }
+
+    private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
+        return wordBaseForms.stream().anyMatch(form -> Arrays.stream(particlesNames).anyMatch(form::contains));
+    }
+}
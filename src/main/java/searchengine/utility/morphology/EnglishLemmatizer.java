@@ -0,0 +1,44 @@
+package searchengine.utility.morphology;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+
+import java.io.IOException;
+
+@Slf4j
+public class EnglishLemmatizer extends CachingLemmatizer {
+
+    private static final int WORD_CACHE_SIZE = 100_000;
+
+    public EnglishLemmatizer() {
+        super("lemma-word-forms-en", WORD_CACHE_SIZE, "CONJ", "PREP", "ARTICLE", "INT", "PART");
+    }
+
+    @Override
+    public boolean supports(char letter) {
+        return letter >= 'a' && letter <= 'z';
+    }
+
+    @Override
+    protected LuceneMorphology morphology() {
+        return MorphologyHolder.MORPHOLOGY;
+    }
+
+    /**
+     * Словарь загружается при первом обращении; инициализацию класса JVM выполняет потокобезопасно.
+     */
+    private static final class MorphologyHolder {
+
+        private static final LuceneMorphology MORPHOLOGY = load();
+
+        private static LuceneMorphology load() {
+            try {
+                return new EnglishLuceneMorphology();
+            } catch (IOException e) {
+                log.error("Error initializing EnglishLuceneMorphology", e);
+                throw new RuntimeException("Failed to initialize EnglishLuceneMorphology", e);
+            }
+        }
+    }
+}
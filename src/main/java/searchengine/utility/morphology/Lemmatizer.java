@@ -0,0 +1,16 @@
+package searchengine.utility.morphology;
+
+import searchengine.dto.statistics.CacheStatistics;
+
+/**
+ * Лемматизатор одного языка. Слова приходят уже в нижнем регистре и состоят только из букв алфавита,
+ * который лемматизатор поддерживает (см. {@link #supports(char)}).
+ */
+public interface Lemmatizer {
+
+    boolean supports(char letter);
+
+    WordForm analyze(String word);
+
+    CacheStatistics getCacheStatistics();
+}
@@ -0,0 +1,44 @@
+package searchengine.utility.morphology;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+
+import java.io.IOException;
+
+@Slf4j
+public class RussianLemmatizer extends CachingLemmatizer {
+
+    private static final int WORD_CACHE_SIZE = 200_000;
+
+    public RussianLemmatizer() {
+        super("lemma-word-forms-ru", WORD_CACHE_SIZE, "МЕЖД", "ПРЕДЛ", "СОЮЗ");
+    }
+
+    @Override
+    public boolean supports(char letter) {
+        return letter >= 'а' && letter <= 'я';
+    }
+
+    @Override
+    protected LuceneMorphology morphology() {
+        return MorphologyHolder.MORPHOLOGY;
+    }
+
+    /**
+     * Словарь загружается при первом обращении; инициализацию класса JVM выполняет потокобезопасно.
+     */
+    private static final class MorphologyHolder {
+
+        private static final LuceneMorphology MORPHOLOGY = load();
+
+        private static LuceneMorphology load() {
+            try {
+                return new RussianLuceneMorphology();
+            } catch (IOException e) {
+                log.error("Error initializing RussianLuceneMorphology", e);
+                throw new RuntimeException("Failed to initialize RussianLuceneMorphology", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package searchengine.utility.morphology;
+
+import java.util.List;
+
+/**
+ * Результат морфологического разбора словоформы: основная лемма, все нормальные формы
+ * и признак служебной части речи.
+ */
+public final class WordForm {
+
+    static final WordForm PARTICLE = new WordForm(null, List.of(), true);
+    static final WordForm UNKNOWN = new WordForm(null, List.of(), false);
+
+    private final String lemma;
+    private final List<String> normalForms;
+    private final boolean particle;
+
+    WordForm(String lemma, List<String> normalForms, boolean particle) {
+        this.lemma = lemma;
+        this.normalForms = normalForms;
+        this.particle = particle;
+    }
+
+    public boolean isIndexable() {
+        return !particle && lemma != null;
+    }
+
+    public String getLemma() {
+        return lemma;
+    }
+
+    public List<String> getNormalForms() {
+        return normalForms;
+    }
+
+    public boolean isParticle() {
+        return particle;
+    }
+}
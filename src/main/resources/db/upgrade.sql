@@ -0,0 +1,19 @@
+-- Колонки page, добавленные после первой версии схемы. При ddl-auto: validate приложение не стартует,
+-- пока их нет, поэтому на существующей базе скрипт выполняется вручную до развертывания.
+-- Все колонки допускают NULL; повторный запуск ничего не меняет.
+
+-- повторный обход с условными запросами
+ALTER TABLE sites_parsing.page ADD COLUMN IF NOT EXISTS etag VARCHAR(255);
+ALTER TABLE sites_parsing.page ADD COLUMN IF NOT EXISTS last_modified VARCHAR(64);
+ALTER TABLE sites_parsing.page ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+
+-- длина страницы в леммах для BM25; для старых страниц досчитывается при старте из indexes_table
+ALTER TABLE sites_parsing.page ADD COLUMN IF NOT EXISTS length INTEGER;
+
+-- заголовок, текст и карта слов для сниппетов и позиций лемм; старые страницы разбираются из HTML при показе
+ALTER TABLE sites_parsing.page ADD COLUMN IF NOT EXISTS title TEXT;
+ALTER TABLE sites_parsing.page ADD COLUMN IF NOT EXISTS plain_text TEXT;
+ALTER TABLE sites_parsing.page ADD COLUMN IF NOT EXISTS token_map BYTEA;
+
+-- сжатый HTML
+ALTER TABLE sites_parsing.page ADD COLUMN IF NOT EXISTS content_compressed BYTEA;